@@ -6,6 +6,9 @@ import org.jnativehook.NativeHookException;
 import org.jnativehook.keyboard.NativeKeyEvent;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
 
@@ -14,6 +17,7 @@ import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 public class Shell extends ShellKeyListener {
     public class ShellIOException extends IOException {
@@ -23,6 +27,7 @@ public class Shell extends ShellKeyListener {
         public static final String MSG_ALREADY_EXIST = "\"%s\" has already exist";
         public static final String MSG_UNABLE_DELETE = "\"%s\" can't be deleted";
         public static final String MSG_UNABLE_READ   = "\"%s\" can't be read";
+        public static final String MSG_READ_ONLY     = "\"%s\" is inside of archive and can't be modified";
 
         public static final String MSG_NOT_CURRENT_DIR = "\"%s\" is not in current directory";
 
@@ -65,6 +70,12 @@ public class Shell extends ShellKeyListener {
         SHOW_FILE      ("head"),
         MAKE_FILE      ("mkfile"),
         WRITE_FILE     ("echo"),
+        WORD_COUNT     ("wc"),
+        OUTPUT_MODE    ("output"),
+        IO_LIMIT       ("limit"),
+        CHECKSUM       ("sum"),
+        DUPLICATES     ("dupes"),
+        SORT           ("sort"),
         NULL_COMMAND   (null);
 
         private final String command;
@@ -89,6 +100,18 @@ public class Shell extends ShellKeyListener {
                     return MAKE_FILE;
                 case "echo":
                     return WRITE_FILE;
+                case "wc":
+                    return WORD_COUNT;
+                case "output":
+                    return OUTPUT_MODE;
+                case "limit":
+                    return IO_LIMIT;
+                case "sum":
+                    return CHECKSUM;
+                case "dupes":
+                    return DUPLICATES;
+                case "sort":
+                    return SORT;
                 default:
                     return NULL_COMMAND;
             }
@@ -100,22 +123,87 @@ public class Shell extends ShellKeyListener {
         }
     }
 
+    private final FileSystem fileSystem;
     private Path currentPath;
 
+    private final ShellOutput output = new ShellOutput();
+    private final ShellIOGovernor governor = new ShellIOGovernor();
+    private final ShellChecksum checksums = new ShellChecksum(governor);
+
     public Shell() {
-        currentPath = Paths.get("").toAbsolutePath();
+        this(FileSystems.getDefault());
+    }
+
+    /**
+     * Creates shell working in {@code fileSystem}, e.g. in {@link ru.croc.java2017.shell.memory.MemoryFileSystem}.
+     */
+    public Shell(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+        currentPath = fileSystem.getPath("").toAbsolutePath();
+    }
+
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    public ShellOutput.Mode getOutputMode() {
+        return output.getMode();
+    }
+
+    public void setOutputMode(ShellOutput.Mode mode) {
+        output.setMode(mode);
+    }
+
+    public ShellIOGovernor getIOGovernor() {
+        return governor;
     }
 
+    private final ShellArchives archives = new ShellArchives(() -> currentPath);
+
     public Path getAbsolutePath(String path) throws ShellIOException {
         try {
-            return currentPath.resolve(path).normalize();
-        } catch (InvalidPathException err) {
+            return archives.resolve(fileSystem, currentPath, path);
+        } catch (InvalidPathException | IOException err) {
+            throw new ShellIOException(err);
+        }
+    }
+
+    private final ShellCompleter completer = new ShellCompleter((String path) -> {
+        try {
+            return getAbsolutePath(path);
+        } catch (ShellIOException err) {
+            return null;
+        }
+    });
+
+    @Override
+    protected String complete(String command) {
+        return completer.complete(command);
+    }
+
+    /**
+     * Returns the root of the archive if {@code path} is a zip or jar archive, otherwise {@code path} itself.
+     */
+    private Path enterArchive(Path path) throws ShellIOException {
+        if (!ShellArchives.isArchive(path)) {
+            return path;
+        }
+
+        try {
+            return archives.mount(path);
+        } catch (IOException | ProviderNotFoundException err) {
             throw new ShellIOException(err);
         }
     }
 
+    private void checkWritable(Path newPath, String path) throws ShellIOException {
+        if (archives.isInArchive(newPath)) {
+            throw new ShellIOException(ShellIOException.MSG_READ_ONLY, path);
+        }
+    }
+
     public Path moveDirectory(String path) throws ShellIOException {
-        Path newPath = getAbsolutePath(path);
+        Path newPath = enterArchive(getAbsolutePath(path));
 
         if (Files.exists(newPath)) {
             if (Files.isDirectory(newPath)) {
@@ -132,12 +220,14 @@ public class Shell extends ShellKeyListener {
 
     public Path makeDirectory(String path) throws ShellIOException {
         Path newPath = getAbsolutePath(path);
+        checkWritable(newPath, path);
 
         if (!newPath.getParent().equals(currentPath)) {
             throw new ShellIOException(ShellIOException.MSG_NOT_CURRENT_DIR, path);
         }
 
         try {
+            governor.acquireOperations(1);
             Files.createDirectory(newPath);
         } catch (FileAlreadyExistsException err) {
             throw new ShellIOException(ShellIOException.MSG_ALREADY_EXIST, path);
@@ -157,6 +247,7 @@ public class Shell extends ShellKeyListener {
 
     public Path makeFile(String path) throws ShellIOException {
         Path newPath = getAbsolutePath(path);
+        checkWritable(newPath, path);
 
         if (!newPath.getParent().equals(currentPath)) {
             throw new ShellIOException(ShellIOException.MSG_NOT_CURRENT_DIR, path);
@@ -164,6 +255,7 @@ public class Shell extends ShellKeyListener {
 
         try {
             if (!Files.exists(newPath)) {
+                governor.acquireOperations(1);
                 Files.createFile(newPath);
             } else {
                 throw new ShellIOException(ShellIOException.MSG_ALREADY_EXIST, path);
@@ -184,10 +276,12 @@ public class Shell extends ShellKeyListener {
     private static final String LS_FORMAT = "%c%c%c%c %15d %s %s";
 
     public Path listDirectory(String path) throws ShellIOException {
-        Path newPath = getAbsolutePath(path);
+        Path newPath = enterArchive(getAbsolutePath(path));
+
+        try (Stream<Path> stream = Files.list(newPath)) {
+            stream.forEach((Path p) -> {
+                governor.acquireOperations(1);
 
-        try {
-            Files.list(newPath).forEach((Path p) -> {
                 boolean isDirectory  = Files.isDirectory(p);
                 boolean isReadable   = Files.isReadable(p);
                 boolean isWritable   = Files.isWritable(p);
@@ -203,16 +297,28 @@ public class Shell extends ShellKeyListener {
                     fileSize = 0;
                 }
 
-                System.out.println(String.format(
-                        LS_FORMAT,
-                        isDirectory  ? 'd' : '-',
-                        isReadable   ? 'r' : '-',
-                        isWritable   ? 'w' : '-',
-                        isExecutable ? 'x' : '-',
-                        fileSize,
-                        lastModified,
-                        p.getFileName()
-                ));
+                if (output.isText()) {
+                    System.out.println(String.format(
+                            LS_FORMAT,
+                            isDirectory  ? 'd' : '-',
+                            isReadable   ? 'r' : '-',
+                            isWritable   ? 'w' : '-',
+                            isExecutable ? 'x' : '-',
+                            fileSize,
+                            lastModified,
+                            p.getFileName()
+                    ));
+                } else {
+                    output.beginRecord();
+                    output.field("name", p.getFileName().toString());
+                    output.field("directory", isDirectory);
+                    output.field("readable", isReadable);
+                    output.field("writable", isWritable);
+                    output.field("executable", isExecutable);
+                    output.field("size", fileSize);
+                    output.field("modified", lastModified.toMillis());
+                    output.endRecord();
+                }
             });
         } catch (NotDirectoryException err) {
             throw new ShellIOException(ShellIOException.MSG_NOT_DIRECTORY, path);
@@ -225,16 +331,19 @@ public class Shell extends ShellKeyListener {
 
     public Path remove(String path, boolean recursive) throws ShellIOException, ShellMissingArgumentException {
         Path newPath = getAbsolutePath(path);
+        checkWritable(newPath, path);
 
         try {
             if (!Files.isDirectory(newPath)) {
+                governor.acquireOperations(1);
                 Files.delete(newPath);
             } else if (recursive) {
                 Files.walk(newPath).sorted(Comparator.reverseOrder()).forEach((Path p) -> {
                     try {
+                        governor.acquireOperations(1);
                         Files.delete(p);
                     } catch (IOException er) {
-                        System.out.println(String.format(ShellIOException.MSG_UNABLE_DELETE, p));
+                        output.error(String.format(ShellIOException.MSG_UNABLE_DELETE, p));
                     }
                 });
             } else {
@@ -248,16 +357,196 @@ public class Shell extends ShellKeyListener {
         return newPath;
     }
 
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final int GZIP_MAGIC_FIRST  = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+
+    /**
+     * Buffers of closed file streams, reused by the next streams opened in the thread.
+     */
+    private static final ThreadLocal<ArrayDeque<byte[]>> FILE_BUFFERS =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
+    private static byte[] takeFileBuffer() {
+        byte[] buffer = FILE_BUFFERS.get().poll();
+        return buffer != null ? buffer : new byte[FILE_BUFFER_SIZE];
+    }
+
+    private static void releaseFileBuffer(byte[] buffer) {
+        ArrayDeque<byte[]> buffers = FILE_BUFFERS.get();
+        if (buffer != null && buffers.size() < MAX_POOLED_BUFFERS) {
+            buffers.push(buffer);
+        }
+    }
+
+    /**
+     * Buffered stream over a pooled buffer, which is returned to the pool on close.
+     */
+    private static class PooledBufferedInputStream extends BufferedInputStream {
+        private byte[] pooled = takeFileBuffer();
+
+        PooledBufferedInputStream(InputStream input) {
+            super(input, 1);
+            buf = pooled;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                releaseFileBuffer(pooled);
+                pooled = null;
+            }
+        }
+    }
+
+    /**
+     * Decompressing stream over a pooled input buffer, which is returned to the pool on close.
+     */
+    private static class PooledGZIPInputStream extends GZIPInputStream {
+        private byte[] pooled = takeFileBuffer();
+
+        PooledGZIPInputStream(InputStream input) throws IOException {
+            super(input, 1);
+            buf = pooled;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                releaseFileBuffer(pooled);
+                pooled = null;
+            }
+        }
+    }
+
+    /**
+     * Opens file for reading. Compressed files are detected by magic bytes
+     * and decompressed on the fly, so only the part actually read is inflated.
+     */
+    InputStream openFileStream(Path path) throws IOException {
+        governor.acquireOperations(1);
+        InputStream input = new PooledBufferedInputStream(governor.wrap(Files.newInputStream(path)));
+
+        try {
+            input.mark(2);
+            int first  = input.read();
+            int second = input.read();
+            input.reset();
+
+            if (first == GZIP_MAGIC_FIRST && second == GZIP_MAGIC_SECOND) {
+                return new PooledGZIPInputStream(input);
+            }
+        } catch (IOException err) {
+            input.close();
+            throw err;
+        }
+
+        return input;
+    }
+
+    private static final Path LINE_INDEX_DIR =
+            Paths.get(System.getProperty("java.io.tmpdir"), "croc-shell-index");
+
+    static final int MAX_LINE_INDEXES = 64;
+
+    private final Map<Path, ShellLineIndex> lineIndexes =
+            new LinkedHashMap<Path, ShellLineIndex>(MAX_LINE_INDEXES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, ShellLineIndex> eldest) {
+                    // indexes of the default file system are still kept on disk
+                    return size() > MAX_LINE_INDEXES;
+                }
+            };
+
+    private ShellLineIndex getLineIndex(Path path) throws IOException {
+        // only indexes of the default file system outlive the session
+        Path cacheFile = path.getFileSystem() == FileSystems.getDefault()
+                ? LINE_INDEX_DIR.resolve(ShellLineIndex.cacheFileName(path)) : null;
+
+        ShellLineIndex index = lineIndexes.get(path);
+        if (index == null && cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try {
+                index = ShellLineIndex.load(cacheFile);
+            } catch (IOException err) {
+                index = null;
+            }
+        }
+
+        long indexedSize = index != null ? index.getSize() : -1;
+        ShellLineIndex updated = ShellLineIndex.update(index, path, governor);
+        lineIndexes.put(path, updated);
+
+        if (cacheFile != null && (updated != index || updated.getSize() != indexedSize)) {
+            try {
+                updated.save(cacheFile);
+            } catch (IOException err) {
+                // index is still usable from memory
+            }
+        }
+
+        return updated;
+    }
+
+    /**
+     * Opens file positioned at the line {@code fromLine} (one-based).
+     * Large skips in uncompressed files go through the sparse line index.
+     */
+    private BufferedReader openFileReader(Path path, long fromLine) throws IOException {
+        long skipLines = fromLine - 1;
+        InputStream input = openFileStream(path);
+
+        if (skipLines >= ShellLineIndex.LINES_PER_ENTRY && !(input instanceof GZIPInputStream)) {
+            input.close();
+
+            ShellLineIndex index = getLineIndex(path);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                channel.position(index.floorOffset(skipLines));
+            } catch (IOException err) {
+                channel.close();
+                throw err;
+            }
+
+            input = governor.wrap(Channels.newInputStream(channel));
+            skipLines -= index.floorLine(skipLines);
+        }
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(input, StandardCharsets.UTF_8), FILE_BUFFER_SIZE);
+        try {
+            while (skipLines-- > 0 && reader.readLine() != null) {
+                // skip lines before the requested one
+            }
+        } catch (IOException err) {
+            reader.close();
+            throw err;
+        }
+        return reader;
+    }
+
     public Path showFile(String path, int numberOfLines) throws ShellIOException {
+        return showFile(path, 1, numberOfLines);
+    }
+
+    public Path showFile(String path, long fromLine, int numberOfLines) throws ShellIOException {
         Path newPath = getAbsolutePath(path);
 
         if (Files.isRegularFile(newPath)) {
-            try {
-                Stream<String> stream = Files.lines(newPath);
-                if (numberOfLines > 0) {
-                    stream = stream.limit(numberOfLines);
+            try (BufferedReader reader = openFileReader(newPath, fromLine)) {
+                String line;
+                int linesPrinted = 0;
+
+                while ((numberOfLines <= 0 || linesPrinted < numberOfLines)
+                        && (line = reader.readLine()) != null) {
+                    System.out.println(line);
+                    linesPrinted++;
                 }
-                stream.forEach(System.out::println);
             } catch (IOException err) {
                 throw new ShellIOException(ShellIOException.MSG_UNABLE_READ, path);
             }
@@ -274,6 +563,7 @@ public class Shell extends ShellKeyListener {
 
     public Path writeTextToFile(String path, String text) throws ShellIOException {
         Path newPath = getAbsolutePath(path);
+        checkWritable(newPath, path);
 
         if (!Files.exists(newPath)) {
             throw new ShellIOException(ShellIOException.MSG_NOT_EXIST, path);
@@ -281,9 +571,11 @@ public class Shell extends ShellKeyListener {
 
         if (Files.isRegularFile(newPath)) {
             try {
-                try (BufferedWriter writer = Files.newBufferedWriter(newPath, StandardOpenOption.APPEND)) {
-                    writer.write(text);
-                }
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                governor.acquireOperations(1);
+                governor.acquireBytes(bytes.length);
+
+                Files.write(newPath, bytes, StandardOpenOption.APPEND);
             } catch (IOException err) {
                 throw new ShellIOException(err);
             }
@@ -294,6 +586,265 @@ public class Shell extends ShellKeyListener {
         return newPath;
     }
 
+    /**
+     * Counts lines, words and bytes of files. Files are counted concurrently,
+     * counts are returned in the order of {@code paths}.
+     */
+    public List<ShellWordCount> wordCount(List<String> paths) throws ShellIOException {
+        List<Path> newPaths = new ArrayList<>();
+
+        for (String path : paths) {
+            Path newPath = getAbsolutePath(path);
+
+            if (!Files.exists(newPath)) {
+                throw new ShellIOException(ShellIOException.MSG_NOT_EXIST, path);
+            } else if (!Files.isRegularFile(newPath)) {
+                throw new ShellIOException(ShellIOException.MSG_NOT_FILE, path);
+            }
+
+            newPaths.add(newPath);
+        }
+
+        List<ShellWordCount> counts = new ArrayList<>();
+        try {
+            newPaths.parallelStream().map((Path p) -> {
+                try {
+                    governor.acquireOperations(1);
+                    return ShellWordCount.count(p, governor);
+                } catch (IOException err) {
+                    throw new UncheckedIOException(err);
+                }
+            }).forEachOrdered(counts::add);
+        } catch (UncheckedIOException err) {
+            throw new ShellIOException(err.getCause());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns regular files of {@code path} in the order of names, {@code path} itself if it is a file.
+     * Keys are the names of files relative to the current directory, as {@code path} was typed.
+     */
+    private Map<String, Path> listFiles(String path, boolean recursive) throws ShellIOException {
+        Path newPath = getAbsolutePath(path);
+        Map<String, Path> files = new LinkedHashMap<>();
+
+        if (!Files.exists(newPath)) {
+            throw new ShellIOException(ShellIOException.MSG_NOT_EXIST, path);
+        } else if (Files.isRegularFile(newPath)) {
+            files.put(path, newPath);
+            return files;
+        } else if (!recursive) {
+            throw new ShellIOException(ShellIOException.MSG_NOT_FILE, path);
+        }
+
+        String prefix = path.endsWith("/") ? path : path + "/";
+        try (Stream<Path> paths = Files.walk(newPath)) {
+            paths.filter(Files::isRegularFile).sorted().forEachOrdered((Path p) ->
+                    files.put(prefix + newPath.relativize(p), p));
+        } catch (IOException | UncheckedIOException err) {
+            throw new ShellIOException(err);
+        }
+
+        governor.acquireOperations(files.size());
+        return files;
+    }
+
+    /**
+     * Computes checksums of the first {@code limit} bytes of files, several files at a time.
+     * Checksums are returned in the order of {@code paths}.
+     */
+    private List<String> checksums(Collection<Path> paths, ShellChecksum.Algorithm algorithm, long limit)
+            throws ShellIOException {
+        List<String> result = new ArrayList<>();
+        try {
+            paths.parallelStream().map((Path p) -> {
+                try {
+                    return checksums.checksum(p, algorithm, limit);
+                } catch (IOException err) {
+                    throw new UncheckedIOException(err);
+                }
+            }).forEachOrdered(result::add);
+        } catch (UncheckedIOException err) {
+            throw new ShellIOException(err.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Computes checksums of files, files of directories are included if {@code recursive} is set.
+     * Returns map from names of files to their checksums.
+     */
+    public Map<String, String> checksum(List<String> paths, ShellChecksum.Algorithm algorithm,
+                                        boolean recursive) throws ShellIOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String path : paths) {
+            files.putAll(listFiles(path, recursive));
+        }
+
+        List<String> sums = checksums(files.values(), algorithm, ShellChecksum.WHOLE_FILE);
+
+        Map<String, String> result = new LinkedHashMap<>();
+        Iterator<String> sum = sums.iterator();
+        for (String name : files.keySet()) {
+            result.put(name, sum.next());
+        }
+        return result;
+    }
+
+    static final long DUPLICATES_FIRST_BLOCK = 64 * 1024;
+
+    /**
+     * Narrows groups of files down to files with equal checksums, drops groups of a single file.
+     */
+    private List<List<String>> splitDuplicates(List<List<String>> groups, Map<String, Path> files,
+                                               ShellChecksum.Algorithm algorithm, long limit)
+            throws ShellIOException {
+        List<String> names = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        for (List<String> group : groups) {
+            for (String name : group) {
+                names.add(name);
+                paths.add(files.get(name));
+            }
+        }
+
+        List<String> sums = checksums(paths, algorithm, limit);
+
+        List<List<String>> result = new ArrayList<>();
+        int i = 0;
+        for (List<String> group : groups) {
+            Map<String, List<String>> bySum = new LinkedHashMap<>();
+            for (int j = 0; j < group.size(); j++, i++) {
+                bySum.computeIfAbsent(sums.get(i), (String key) -> new ArrayList<>()).add(names.get(i));
+            }
+
+            for (List<String> duplicates : bySum.values()) {
+                if (duplicates.size() > 1) {
+                    result.add(duplicates);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds files with equal contents in directory {@code path}. Files are grouped by size first,
+     * then by checksum of their first block, and only files which still collide are hashed fully.
+     * Empty files aren't reported.
+     */
+    public List<List<String>> findDuplicates(String path, boolean recursive) throws ShellIOException {
+        Path newPath = getAbsolutePath(path);
+
+        if (!Files.exists(newPath)) {
+            throw new ShellIOException(ShellIOException.MSG_NOT_EXIST, path);
+        } else if (!Files.isDirectory(newPath)) {
+            throw new ShellIOException(ShellIOException.MSG_NOT_DIRECTORY, path);
+        }
+
+        Map<String, Path> files = new LinkedHashMap<>();
+        if (recursive) {
+            files = listFiles(path, true);
+        } else {
+            String prefix = path.endsWith("/") ? path : path + "/";
+            try (Stream<Path> paths = Files.list(newPath)) {
+                for (Path p : (Iterable<Path>) paths.filter(Files::isRegularFile).sorted()::iterator) {
+                    files.put(prefix + p.getFileName(), p);
+                }
+            } catch (IOException | UncheckedIOException err) {
+                throw new ShellIOException(err);
+            }
+            governor.acquireOperations(files.size());
+        }
+
+        Map<Long, List<String>> bySize = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                long size = Files.size(file.getValue());
+                bySize.computeIfAbsent(size, (Long key) -> new ArrayList<>()).add(file.getKey());
+            }
+        } catch (IOException err) {
+            throw new ShellIOException(err);
+        }
+
+        bySize.remove(0L);
+
+        List<List<String>> groups = new ArrayList<>();
+        for (List<String> group : bySize.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+
+        groups = splitDuplicates(groups, files, ShellChecksum.Algorithm.XXHASH, DUPLICATES_FIRST_BLOCK);
+        groups = splitDuplicates(groups, files, ShellChecksum.Algorithm.SHA256, ShellChecksum.WHOLE_FILE);
+
+        groups.sort(Comparator.comparing((List<String> group) -> group.get(0)));
+        return groups;
+    }
+
+    /**
+     * Sorts lines of file {@code path} into file {@code outputPath}, which may be the same file,
+     * or prints them if {@code outputPath} is {@code null}.
+     */
+    public Path sortFile(String path, ShellSort sort, String outputPath) throws ShellIOException {
+        Path newPath = getAbsolutePath(path);
+
+        if (!Files.exists(newPath)) {
+            throw new ShellIOException(ShellIOException.MSG_NOT_EXIST, path);
+        } else if (!Files.isRegularFile(newPath)) {
+            throw new ShellIOException(ShellIOException.MSG_NOT_FILE, path);
+        }
+
+        Path newOutputPath = null;
+        if (outputPath != null) {
+            newOutputPath = getAbsolutePath(outputPath);
+            checkWritable(newOutputPath, outputPath);
+
+            if (Files.isDirectory(newOutputPath)) {
+                throw new ShellIOException(ShellIOException.MSG_NOT_FILE, outputPath);
+            }
+        }
+
+        Path output = newOutputPath;
+        sort.setGovernor(governor);
+
+        try (InputStream input = openFileStream(newPath)) {
+            sort.sort(input, () -> {
+                if (output == null && !this.output.isText()) {
+                    return this.output.lineRecords("line");
+                } else if (output == null) {
+                    // System.out must stay open
+                    return new FilterOutputStream(System.out) {
+                        @Override
+                        public void write(byte[] bytes, int offset, int length) {
+                            System.out.write(bytes, offset, length);
+                        }
+
+                        @Override
+                        public void close() {
+                            System.out.flush();
+                        }
+                    };
+                }
+
+                governor.acquireOperations(1);
+                return new FilterOutputStream(Files.newOutputStream(output)) {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        governor.acquireBytes(length);
+                        out.write(bytes, offset, length);
+                    }
+                };
+            });
+        } catch (IOException err) {
+            throw new ShellIOException(err);
+        }
+
+        return output != null ? output : newPath;
+    }
+
     private void processMoveDirectory(String[] args) throws ShellIOException, ShellIllegalUsage {
         String path = null;
 
@@ -360,7 +911,7 @@ public class Shell extends ShellKeyListener {
         }
 
         if (path == null) {
-            path = currentPath.toString();
+            path = ".";
         }
 
         listDirectory(path);
@@ -391,6 +942,7 @@ public class Shell extends ShellKeyListener {
     private void processShowFile(String[] args) throws ShellIOException,
             ShellIllegalUsage, ShellMissingArgumentException {
         int numberOfLines = -1;
+        long fromLine = 1;
         String path = null;
 
         for (int i = 1; i < args.length; i++) {
@@ -400,6 +952,16 @@ public class Shell extends ShellKeyListener {
                 } catch (NumberFormatException err) {
                     throw new ShellIllegalUsage(ShellCommands.SHOW_FILE);
                 }
+            } else if (args[i].equals("--from") && i < args.length - 1) {
+                try {
+                    fromLine = Long.valueOf(args[++i]);
+                } catch (NumberFormatException err) {
+                    throw new ShellIllegalUsage(ShellCommands.SHOW_FILE);
+                }
+
+                if (fromLine < 1) {
+                    throw new ShellIllegalUsage(ShellCommands.SHOW_FILE);
+                }
             } else if (path == null) {
                 path = args[i];
             } else {
@@ -411,7 +973,7 @@ public class Shell extends ShellKeyListener {
             throw new ShellIllegalUsage(ShellCommands.SHOW_FILE);
         }
 
-        showFile(path, numberOfLines);
+        showFile(path, fromLine, numberOfLines);
     }
 
     private void processWriteToFile(String[] args) throws ShellIOException, ShellIllegalUsage {
@@ -433,10 +995,311 @@ public class Shell extends ShellKeyListener {
         }
     }
 
+    private static final String WC_FORMAT = "%8d ";
+
+    private void processWordCount(String[] args) throws ShellIOException, ShellIllegalUsage {
+        boolean showLines = false, showWords = false, showBytes = false;
+        List<String> paths = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-l")) {
+                showLines = true;
+            } else if (args[i].equals("-w")) {
+                showWords = true;
+            } else if (args[i].equals("-c")) {
+                showBytes = true;
+            } else {
+                paths.add(args[i]);
+            }
+        }
+
+        if (paths.isEmpty()) {
+            throw new ShellIllegalUsage(ShellCommands.WORD_COUNT);
+        }
+
+        if (!showLines && !showWords && !showBytes) {
+            showLines = showWords = showBytes = true;
+        }
+
+        List<ShellWordCount> counts = wordCount(paths);
+
+        if (!output.isText()) {
+            for (int i = 0; i < counts.size(); i++) {
+                output.beginRecord();
+                output.field("name", paths.get(i));
+                if (showLines) {
+                    output.field("lines", counts.get(i).getLines());
+                }
+                if (showWords) {
+                    output.field("words", counts.get(i).getWords());
+                }
+                if (showBytes) {
+                    output.field("bytes", counts.get(i).getBytes());
+                }
+                output.endRecord();
+            }
+            return;
+        }
+
+        ShellWordCount total = new ShellWordCount();
+        for (int i = 0; i <= counts.size(); i++) {
+            ShellWordCount count;
+            String name;
+
+            if (i < counts.size()) {
+                count = counts.get(i);
+                name = paths.get(i);
+                total.add(count);
+            } else if (counts.size() > 1) {
+                count = total;
+                name = "total";
+            } else {
+                break;
+            }
+
+            StringBuilder line = new StringBuilder();
+            if (showLines) {
+                line.append(String.format(WC_FORMAT, count.getLines()));
+            }
+            if (showWords) {
+                line.append(String.format(WC_FORMAT, count.getWords()));
+            }
+            if (showBytes) {
+                line.append(String.format(WC_FORMAT, count.getBytes()));
+            }
+            System.out.println(line.append(name));
+        }
+    }
+
+    private void processOutputMode(String[] args) throws ShellIllegalUsage {
+        if (args.length != 2) {
+            throw new ShellIllegalUsage(ShellCommands.OUTPUT_MODE);
+        }
+
+        ShellOutput.Mode mode = ShellOutput.Mode.getEnumMode(args[1]);
+        if (mode == null) {
+            throw new ShellIllegalUsage(ShellCommands.OUTPUT_MODE);
+        }
+
+        setOutputMode(mode);
+    }
+
+    private static final long[] SIZE_MULTIPLIERS = {1L << 10, 1L << 20, 1L << 30};
+    private static final String SIZE_SUFFIXES = "KMG";
+
+    /**
+     * Parses size like "512", "64K", "10M" or "1G".
+     */
+    private static long parseSize(String size) throws NumberFormatException {
+        if (size.isEmpty()) {
+            throw new NumberFormatException(size);
+        }
+
+        int suffix = SIZE_SUFFIXES.indexOf(Character.toUpperCase(size.charAt(size.length() - 1)));
+        if (suffix < 0) {
+            return Long.parseLong(size);
+        }
+        return Long.parseLong(size.substring(0, size.length() - 1)) * SIZE_MULTIPLIERS[suffix];
+    }
+
+    private static final String LIMIT_FORMAT =
+            "bytes/sec: %s, operations/sec: %s, throttled commands: %d, throttled %d times for %.3f sec";
+
+    private void processIOLimit(String[] args) throws ShellIllegalUsage {
+        long bytesPerSecond = governor.getBytesPerSecond();
+        long operationsPerSecond = governor.getOperationsPerSecond();
+
+        for (int i = 1; i < args.length; i++) {
+            try {
+                if (args[i].equals("off") && args.length == 2) {
+                    bytesPerSecond = ShellIOGovernor.UNLIMITED;
+                    operationsPerSecond = ShellIOGovernor.UNLIMITED;
+                } else if (args[i].equals("-b") && i < args.length - 1) {
+                    bytesPerSecond = parseSize(args[++i]);
+                } else if (args[i].equals("-o") && i < args.length - 1) {
+                    operationsPerSecond = parseSize(args[++i]);
+                } else {
+                    throw new ShellIllegalUsage(ShellCommands.IO_LIMIT);
+                }
+            } catch (NumberFormatException err) {
+                throw new ShellIllegalUsage(ShellCommands.IO_LIMIT);
+            }
+        }
+
+        if (bytesPerSecond < 0 || operationsPerSecond < 0) {
+            throw new ShellIllegalUsage(ShellCommands.IO_LIMIT);
+        }
+
+        if (args.length > 1) {
+            governor.setLimits(bytesPerSecond, operationsPerSecond);
+            return;
+        }
+
+        if (output.isText()) {
+            System.out.println(String.format(LIMIT_FORMAT,
+                    bytesPerSecond == ShellIOGovernor.UNLIMITED ? "unlimited" : String.valueOf(bytesPerSecond),
+                    operationsPerSecond == ShellIOGovernor.UNLIMITED ? "unlimited" : String.valueOf(operationsPerSecond),
+                    governor.getThrottledCommands(),
+                    governor.getThrottledCount(),
+                    governor.getThrottledNanos() / 1e9));
+        } else {
+            output.beginRecord();
+            output.field("bytesPerSecond", bytesPerSecond);
+            output.field("operationsPerSecond", operationsPerSecond);
+            output.field("throttledCommands", governor.getThrottledCommands());
+            output.field("throttledCount", governor.getThrottledCount());
+            output.field("throttledNanos", governor.getThrottledNanos());
+            output.endRecord();
+        }
+    }
+
+    private static final String CHECKSUM_FORMAT = "%s  %s";
+
+    private void processChecksum(String[] args) throws ShellIOException, ShellIllegalUsage {
+        ShellChecksum.Algorithm algorithm = ShellChecksum.Algorithm.SHA256;
+        boolean recursive = false;
+        List<String> paths = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-a") && i < args.length - 1) {
+                algorithm = ShellChecksum.Algorithm.getEnumAlgorithm(args[++i]);
+                if (algorithm == null) {
+                    throw new ShellIllegalUsage(ShellCommands.CHECKSUM);
+                }
+            } else if (args[i].equals("-r")) {
+                recursive = true;
+            } else {
+                paths.add(args[i]);
+            }
+        }
+
+        if (paths.isEmpty()) {
+            throw new ShellIllegalUsage(ShellCommands.CHECKSUM);
+        }
+
+        for (Map.Entry<String, String> sum : checksum(paths, algorithm, recursive).entrySet()) {
+            if (output.isText()) {
+                System.out.println(String.format(CHECKSUM_FORMAT, sum.getValue(), sum.getKey()));
+            } else {
+                output.beginRecord();
+                output.field("name", sum.getKey());
+                output.field("algorithm", algorithm.toString());
+                output.field("checksum", sum.getValue());
+                output.endRecord();
+            }
+        }
+    }
+
+    private void processDuplicates(String[] args) throws ShellIOException, ShellIllegalUsage {
+        boolean recursive = false;
+        String path = null;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-r")) {
+                recursive = true;
+            } else if (path == null) {
+                path = args[i];
+            } else {
+                throw new ShellIllegalUsage(ShellCommands.DUPLICATES);
+            }
+        }
+
+        if (path == null) {
+            path = ".";
+        }
+
+        List<List<String>> groups = findDuplicates(path, recursive);
+        for (int i = 0; i < groups.size(); i++) {
+            if (output.isText() && i > 0) {
+                System.out.println();
+            }
+
+            for (String name : groups.get(i)) {
+                if (output.isText()) {
+                    System.out.println(name);
+                } else {
+                    output.beginRecord();
+                    output.field("group", i);
+                    output.field("name", name);
+                    output.endRecord();
+                }
+            }
+        }
+    }
+
+    private static boolean isQuoted(String arg) {
+        return arg.length() > 1 && ((arg.startsWith("\"") && arg.endsWith("\""))
+                || (arg.startsWith("'") && arg.endsWith("'")));
+    }
+
+    private void processSort(String[] args) throws ShellIOException, ShellIllegalUsage {
+        ShellSort sort = new ShellSort();
+        String path = null, outputPath = null;
+
+        // splitCommands moves quoted arguments to the end, they are taken by "-t" in order
+        List<String> plain = new ArrayList<>();
+        Deque<String> quoted = new ArrayDeque<>();
+        for (int i = 1; i < args.length; i++) {
+            if (isQuoted(args[i])) {
+                quoted.add(args[i]);
+            } else {
+                plain.add(args[i]);
+            }
+        }
+
+        try {
+            for (int i = 0; i < plain.size(); i++) {
+                String arg = plain.get(i);
+
+                if (arg.equals("-k") && i < plain.size() - 1) {
+                    sort.setField(Integer.parseInt(plain.get(++i)));
+                } else if (arg.equals("-t") && (!quoted.isEmpty() || i < plain.size() - 1)) {
+                    String separator;
+                    if (!quoted.isEmpty()) {
+                        separator = quoted.poll();
+                        separator = StringEscapeUtils.unescapeJava(separator.substring(1, separator.length() - 1));
+                    } else {
+                        separator = plain.get(++i);
+                    }
+
+                    if (separator.length() != 1 || separator.charAt(0) >= 0x80) {
+                        throw new ShellIllegalUsage(ShellCommands.SORT);
+                    }
+                    sort.setSeparator(separator.charAt(0));
+                } else if (arg.equals("-n")) {
+                    sort.setNumeric(true);
+                } else if (arg.equals("-u")) {
+                    sort.setUnique(true);
+                } else if (arg.equals("-o") && i < plain.size() - 1) {
+                    outputPath = plain.get(++i);
+                } else if (arg.equals("-S") && i < plain.size() - 1) {
+                    sort.setMemory(parseSize(plain.get(++i)));
+                } else if (path == null) {
+                    path = arg;
+                } else {
+                    throw new ShellIllegalUsage(ShellCommands.SORT);
+                }
+            }
+        } catch (IllegalArgumentException err) {
+            throw new ShellIllegalUsage(ShellCommands.SORT);
+        }
+
+        if (!quoted.isEmpty()) {
+            throw new ShellIllegalUsage(ShellCommands.SORT);
+        }
+
+        if (path == null) {
+            throw new ShellIllegalUsage(ShellCommands.SORT);
+        }
+
+        sortFile(path, sort, outputPath);
+    }
+
     private void processCommand(String command) {
         addProcessedCommand(command);
         String[] args = splitCommands(command);
 
+        governor.beginCommand();
         try {
             switch (ShellCommands.getEnumCommand(args[0])) {
                 case MOVE_DIRECTORY:
@@ -460,11 +1323,32 @@ public class Shell extends ShellKeyListener {
                 case WRITE_FILE:
                     processWriteToFile(args);
                     break;
+                case WORD_COUNT:
+                    processWordCount(args);
+                    break;
+                case OUTPUT_MODE:
+                    processOutputMode(args);
+                    break;
+                case IO_LIMIT:
+                    processIOLimit(args);
+                    break;
+                case CHECKSUM:
+                    processChecksum(args);
+                    break;
+                case DUPLICATES:
+                    processDuplicates(args);
+                    break;
+                case SORT:
+                    processSort(args);
+                    break;
                 default:
-                    System.out.println(String.format("Command \"%s\" is not found", args[0]));
+                    output.error(String.format("Command \"%s\" is not found", args[0]));
             }
         } catch (ShellIOException | ShellRuntimeException err) {
-            System.out.println(err.getMessage());
+            output.error(err.getMessage());
+        } finally {
+            governor.endCommand();
+            output.flush();
         }
     }
 
@@ -517,7 +1401,7 @@ public class Shell extends ShellKeyListener {
     }
 
     private String introMessage() {
-        return currentPath + "$: ";
+        return archives.toDisplayString(currentPath) + "$: ";
     }
 
     private boolean mutex = false;
@@ -533,6 +1417,7 @@ public class Shell extends ShellKeyListener {
         switch (e.getKeyCode()) {
             case NativeKeyEvent.VC_UP:
             case NativeKeyEvent.VC_DOWN:
+            case NativeKeyEvent.VC_TAB:
                 System.out.flush();
                 System.out.print("\r");
                 System.out.print(introMessage());
@@ -549,7 +1434,10 @@ public class Shell extends ShellKeyListener {
             String command;
 
             while (true) {
-                System.out.print(introMessage());
+                // prompts would break records of the machine-readable modes
+                if (output.isText()) {
+                    System.out.print(introMessage());
+                }
 
                 if ((command = reader.readLine()) == null) {
                     break;
@@ -560,7 +1448,7 @@ public class Shell extends ShellKeyListener {
                 command = getCurrentCommand() != null ? getCurrentCommand() : command;
 
                 if (command.length() > 0) {
-                    if (printCommands) {
+                    if (printCommands && output.isText()) {
                         System.out.println(command);
                     }
 
@@ -568,7 +1456,7 @@ public class Shell extends ShellKeyListener {
                     processCommand(command);
                     mutex = false;
                 } else {
-                    if (printCommands) {
+                    if (printCommands && output.isText()) {
                         System.out.print('\n');
                     }
                 }
@@ -0,0 +1,220 @@
+package ru.croc.java2017.shell;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Resolves paths which cross the boundary of zip and jar archives. Archive is mounted
+ * through the zip file system when a path goes inside it; mounted archives are kept in an LRU
+ * cache keyed on path and modification time, so the central directory is read only once.
+ */
+class ShellArchives {
+    static final int MAX_MOUNTED = 16;
+
+    private static final String[] ARCHIVE_EXTENSIONS = {".zip", ".jar"};
+    private static final String ARCHIVE_SEPARATOR = "!";
+
+    private static class MountedArchive {
+        final FileTime lastModified;
+        final FileSystem fileSystem;
+
+        /**
+         * Temporary copy the archive is mounted from, {@code null} if it is mounted in place.
+         */
+        final Path copy;
+
+        MountedArchive(FileTime lastModified, FileSystem fileSystem, Path copy) {
+            this.lastModified = lastModified;
+            this.fileSystem = fileSystem;
+            this.copy = copy;
+        }
+    }
+
+    private final Supplier<Path> currentPath;
+
+    private final Map<FileSystem, Path> archivePaths = new HashMap<>();
+
+    private final LinkedHashMap<Path, MountedArchive> mounted = new LinkedHashMap<>(MAX_MOUNTED, 0.75f, true);
+
+    /**
+     * @param currentPath current directory of the shell, archives it is located in are never unmounted
+     */
+    ShellArchives(Supplier<Path> currentPath) {
+        this.currentPath = currentPath;
+    }
+
+    /**
+     * Returns {@code true} if {@code path} is a zip or jar file. The file is checked only if the name matches,
+     * so it's cheap for every component of a path.
+     */
+    static boolean isArchive(Path path) {
+        Path name = path.getFileName();
+        if (name == null) {
+            return false;
+        }
+
+        String fileName = name.toString().toLowerCase(Locale.ROOT);
+        for (String extension : ARCHIVE_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return Files.isRegularFile(path);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if {@code path} is located inside of a mounted archive.
+     */
+    boolean isInArchive(Path path) {
+        return archivePaths.containsKey(path.getFileSystem());
+    }
+
+    /**
+     * Resolves {@code path} against {@code base} step by step, mounting every archive the path goes through.
+     * Absolute paths are resolved against {@code fileSystem}, ".." at the root of an archive leads to the
+     * directory which contains the archive.
+     */
+    Path resolve(FileSystem fileSystem, Path base, String path) throws IOException {
+        Path relative = isInArchive(base) && !fileSystem.getPath(path).isAbsolute()
+                ? base.getFileSystem().getPath(path) : fileSystem.getPath(path);
+        Path current = relative.isAbsolute() ? relative.getRoot() : base;
+
+        for (Path name : relative) {
+            switch (name.toString()) {
+                case "":
+                case ".":
+                    break;
+                case "..":
+                    current = getParent(current);
+                    break;
+                default:
+                    if (isArchive(current)) {
+                        current = mount(current);
+                    }
+                    current = current.resolve(name.toString());
+            }
+        }
+
+        return current;
+    }
+
+    private Path getParent(Path path) {
+        Path parent = path.getParent();
+        if (parent != null) {
+            return parent;
+        }
+
+        Path archive = archivePaths.get(path.getFileSystem());
+        if (archive != null) {
+            parent = archive.getParent();
+            return parent != null ? parent : archive;
+        }
+
+        // ".." of the root is the root itself
+        return path;
+    }
+
+    /**
+     * Returns the root directory of the archive, mounting it if needed.
+     */
+    Path mount(Path archive) throws IOException {
+        Path key = archive.toAbsolutePath().normalize();
+        FileTime lastModified = Files.getLastModifiedTime(key);
+
+        MountedArchive mountedArchive = mounted.get(key);
+        if (mountedArchive != null && !mountedArchive.lastModified.equals(lastModified)) {
+            mounted.remove(key);
+            if (!isInUse(mountedArchive.fileSystem)) {
+                unmount(mountedArchive);
+            }
+            mountedArchive = null;
+        }
+
+        if (mountedArchive == null) {
+            FileSystem fileSystem;
+            Path copy = null;
+            try {
+                fileSystem = FileSystems.newFileSystem(key, (ClassLoader) null);
+            } catch (UnsupportedOperationException | ProviderNotFoundException err) {
+                if (key.getFileSystem() == FileSystems.getDefault()) {
+                    throw new IOException(String.format("Archive \"%s\" can't be opened", key), err);
+                }
+
+                // zip file system of JDK 8 opens only archives of the default file system,
+                // so e.g. a nested archive is mounted from a temporary copy
+                copy = Files.createTempFile("shell", key.getFileName().toString());
+                copy.toFile().deleteOnExit();
+                try {
+                    Files.copy(key, copy, StandardCopyOption.REPLACE_EXISTING);
+                    fileSystem = FileSystems.newFileSystem(copy, (ClassLoader) null);
+                } catch (IOException | RuntimeException copyErr) {
+                    Files.deleteIfExists(copy);
+                    throw new IOException(String.format("Archive \"%s\" can't be opened", key), copyErr);
+                }
+            }
+
+            archivePaths.put(fileSystem, key);
+            mountedArchive = new MountedArchive(lastModified, fileSystem, copy);
+            mounted.put(key, mountedArchive);
+            evict();
+        }
+
+        return mountedArchive.fileSystem.getRootDirectories().iterator().next();
+    }
+
+    /**
+     * Unmounts the least recently used archives which are not in use, while there are too many of them.
+     */
+    private void evict() {
+        Iterator<MountedArchive> iterator = mounted.values().iterator();
+        while (mounted.size() > MAX_MOUNTED && iterator.hasNext()) {
+            MountedArchive archive = iterator.next();
+            if (!isInUse(archive.fileSystem)) {
+                iterator.remove();
+                unmount(archive);
+            }
+        }
+    }
+
+    private void unmount(MountedArchive archive) {
+        archivePaths.remove(archive.fileSystem);
+        try {
+            archive.fileSystem.close();
+            if (archive.copy != null) {
+                Files.deleteIfExists(archive.copy);
+            }
+        } catch (IOException err) {
+            // shell never modifies archives, so there is nothing to lose
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current directory is inside of {@code fileSystem},
+     * possibly through nested archives.
+     */
+    private boolean isInUse(FileSystem fileSystem) {
+        Path path = currentPath.get();
+        while (path != null) {
+            if (path.getFileSystem() == fileSystem) {
+                return true;
+            }
+            path = archivePaths.get(path.getFileSystem());
+        }
+        return false;
+    }
+
+    /**
+     * Returns path as it is shown to user: paths inside of archives look like "dir/file.zip!/entry".
+     */
+    String toDisplayString(Path path) {
+        Path archive = archivePaths.get(path.getFileSystem());
+        if (archive == null) {
+            return path.toString();
+        }
+        return toDisplayString(archive) + ARCHIVE_SEPARATOR + path;
+    }
+}
@@ -0,0 +1,421 @@
+package ru.croc.java2017.shell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Checksums of files. Big files are mapped into memory region by region, the others are read
+ * through a per-thread direct buffer. Checksums are cached by path, size and modification time,
+ * so files which haven't changed since the previous run are not read again.
+ */
+public class ShellChecksum {
+    public enum Algorithm {
+        SHA256 ("sha256"),
+        CRC32C ("crc32c"),
+        XXHASH ("xxhash");
+
+        private final String algorithm;
+
+        private Algorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public static Algorithm getEnumAlgorithm(String algorithm) {
+            for (Algorithm value : values()) {
+                if (value.algorithm.equals(algorithm)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        Hasher newHasher() {
+            switch (this) {
+                case SHA256:
+                    return new Sha256Hasher();
+                case CRC32C:
+                    return new Crc32cHasher();
+                default:
+                    return new XxHash64Hasher();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return algorithm;
+        }
+    }
+
+    static final int MAX_CACHED = 16 * 1024;
+    static final long WHOLE_FILE = Long.MAX_VALUE;
+    static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static class Key {
+        final Path path;
+        final Algorithm algorithm;
+        final long limit;
+
+        Key(Path path, Algorithm algorithm, long limit) {
+            this.path = path;
+            this.algorithm = algorithm;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return path.equals(key.path) && algorithm == key.algorithm && limit == key.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, algorithm, limit);
+        }
+    }
+
+    private static class CachedChecksum {
+        final long size;
+        final FileTime lastModified;
+        final String checksum;
+
+        CachedChecksum(long size, FileTime lastModified, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+
+    private final LinkedHashMap<Key, CachedChecksum> cache = new LinkedHashMap<Key, CachedChecksum>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedChecksum> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final ShellIOGovernor governor;
+
+    ShellChecksum(ShellIOGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Returns checksum of the whole file as a hex string.
+     */
+    String checksum(Path path, Algorithm algorithm) throws IOException {
+        return checksum(path, algorithm, WHOLE_FILE);
+    }
+
+    /**
+     * Returns checksum of the first {@code limit} bytes of the file as a hex string.
+     */
+    String checksum(Path path, Algorithm algorithm, long limit) throws IOException {
+        governor.acquireOperations(1);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        Key key = new Key(path, algorithm, limit);
+        CachedChecksum cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+
+        if (cached != null && cached.size == attributes.size() && cached.lastModified.equals(attributes.lastModifiedTime())) {
+            return cached.checksum;
+        }
+
+        String checksum = toHex(hash(path, algorithm.newHasher(), limit));
+
+        // the file may change while it is hashed: such a checksum isn't cached
+        BasicFileAttributes hashed = Files.readAttributes(path, BasicFileAttributes.class);
+        if (hashed.size() == attributes.size() && hashed.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+            synchronized (cache) {
+                cache.put(key, new CachedChecksum(attributes.size(), attributes.lastModifiedTime(), checksum));
+            }
+        }
+        return checksum;
+    }
+
+    private byte[] hash(Path path, Hasher hasher, long limit) throws IOException {
+        governor.acquireOperations(1);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), limit);
+
+            boolean mapped = false;
+            if (size >= MAP_THRESHOLD) {
+                try {
+                    for (long position = 0; position < size; position += REGION_SIZE) {
+                        long length = Math.min(REGION_SIZE, size - position);
+                        ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                        governor.acquireBytes(length);
+                        hasher.update(region);
+                    }
+                    mapped = true;
+                } catch (UnsupportedOperationException err) {
+                    // file system without memory mapping, nothing has been hashed yet
+                }
+            }
+
+            if (!mapped) {
+                ByteBuffer buffer = READ_BUFFER.get();
+                for (long position = 0; position < size; ) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), size - position));
+
+                    int read = channel.read(buffer);
+                    if (read < 0) {
+                        break;
+                    }
+
+                    governor.acquireBytes(read);
+                    buffer.flip();
+                    hasher.update(buffer);
+                    position += read;
+                }
+            }
+        }
+
+        return hasher.digest();
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    interface Hasher {
+        /**
+         * Hashes remaining bytes of {@code buffer}, the buffer position is moved to its limit.
+         */
+        void update(ByteBuffer buffer);
+
+        byte[] digest();
+    }
+
+    static class Sha256Hasher implements Hasher {
+        private final MessageDigest digest;
+
+        Sha256Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException err) {
+                throw new IllegalStateException(err);
+            }
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public byte[] digest() {
+            return digest.digest();
+        }
+    }
+
+    /**
+     * CRC-32C (Castagnoli), slicing-by-8: eight bytes are processed per table round.
+     */
+    static class Crc32cHasher implements Hasher {
+        private static final int POLYNOMIAL = 0x82f63b78;
+        private static final int[][] TABLES = new int[8][256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc = i;
+                for (int bit = 0; bit < 8; bit++) {
+                    crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+                }
+                TABLES[0][i] = crc;
+            }
+            for (int i = 0; i < 256; i++) {
+                for (int table = 1; table < 8; table++) {
+                    int crc = TABLES[table - 1][i];
+                    TABLES[table][i] = (crc >>> 8) ^ TABLES[0][crc & 0xff];
+                }
+            }
+        }
+
+        private int crc = 0xffffffff;
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+            int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            int crc = this.crc;
+            int i = buffer.position();
+            int limit = buffer.limit();
+
+            for (; i + 8 <= limit; i += 8) {
+                long word = buffer.getLong(i);
+                int low = (int) word ^ crc;
+                int high = (int) (word >>> 32);
+                crc = t7[low & 0xff] ^ t6[(low >>> 8) & 0xff] ^ t5[(low >>> 16) & 0xff] ^ t4[low >>> 24]
+                        ^ t3[high & 0xff] ^ t2[(high >>> 8) & 0xff] ^ t1[(high >>> 16) & 0xff] ^ t0[high >>> 24];
+            }
+            for (; i < limit; i++) {
+                crc = (crc >>> 8) ^ t0[(crc ^ buffer.get(i)) & 0xff];
+            }
+
+            this.crc = crc;
+            buffer.position(limit);
+            buffer.order(order);
+        }
+
+        @Override
+        public byte[] digest() {
+            int value = ~crc;
+            return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+    }
+
+    /**
+     * XXH64 with zero seed. Input is consumed in 32 bytes long stripes; the tail of a buffer
+     * which doesn't fill a whole stripe is kept until the next update.
+     */
+    static class XxHash64Hasher implements Hasher {
+        private static final long PRIME1 = 0x9E3779B185EBCA87L;
+        private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long PRIME3 = 0x165667B19E3779F9L;
+        private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+        private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+        private static final int STRIPE = 32;
+
+        private long v1 = PRIME1 + PRIME2;
+        private long v2 = PRIME2;
+        private long v3 = 0;
+        private long v4 = -PRIME1;
+
+        private long length = 0;
+
+        private final ByteBuffer tail = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+
+        private static long round(long acc, long input) {
+            acc += input * PRIME2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * PRIME1;
+        }
+
+        private static long mergeRound(long acc, long value) {
+            acc ^= round(0, value);
+            return acc * PRIME1 + PRIME4;
+        }
+
+        private void stripe(ByteBuffer buffer, int i) {
+            v1 = round(v1, buffer.getLong(i));
+            v2 = round(v2, buffer.getLong(i + 8));
+            v3 = round(v3, buffer.getLong(i + 16));
+            v4 = round(v4, buffer.getLong(i + 24));
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            int i = buffer.position();
+            int limit = buffer.limit();
+            length += limit - i;
+
+            if (tail.position() > 0) {
+                while (tail.hasRemaining() && i < limit) {
+                    tail.put(buffer.get(i++));
+                }
+                if (tail.hasRemaining()) {
+                    buffer.position(limit);
+                    buffer.order(order);
+                    return;
+                }
+                stripe(tail, 0);
+                tail.clear();
+            }
+
+            for (; i + STRIPE <= limit; i += STRIPE) {
+                stripe(buffer, i);
+            }
+            for (; i < limit; i++) {
+                tail.put(buffer.get(i));
+            }
+
+            buffer.position(limit);
+            buffer.order(order);
+        }
+
+        @Override
+        public byte[] digest() {
+            long hash;
+            if (length >= STRIPE) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = mergeRound(hash, v1);
+                hash = mergeRound(hash, v2);
+                hash = mergeRound(hash, v3);
+                hash = mergeRound(hash, v4);
+            } else {
+                hash = v3 + PRIME5;
+            }
+            hash += length;
+
+            int i = 0;
+            int limit = tail.position();
+            for (; i + 8 <= limit; i += 8) {
+                hash ^= round(0, tail.getLong(i));
+                hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            }
+            if (i + 4 <= limit) {
+                hash ^= (tail.getInt(i) & 0xffffffffL) * PRIME1;
+                hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+                i += 4;
+            }
+            for (; i < limit; i++) {
+                hash ^= (tail.get(i) & 0xff) * PRIME5;
+                hash = Long.rotateLeft(hash, 11) * PRIME1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME2;
+            hash ^= hash >>> 29;
+            hash *= PRIME3;
+            hash ^= hash >>> 32;
+
+            byte[] digest = new byte[8];
+            for (int b = 0; b < 8; b++) {
+                digest[b] = (byte) (hash >>> (56 - 8 * b));
+            }
+            return digest;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ru.croc.java2017.shell;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Completes command names and path arguments. Names of a directory are read once into a sorted
+ * array, which is cached and shared between key presses until the modification time of the
+ * directory changes; completing is then a binary search for the range of names with the prefix.
+ */
+class ShellCompleter {
+    static final int MAX_CACHED = 64;
+
+    private static final String[] COMMANDS;
+
+    static {
+        List<String> commands = new ArrayList<>();
+        for (Shell.ShellCommands command : Shell.ShellCommands.values()) {
+            if (command.toString() != null) {
+                commands.add(command.toString());
+            }
+        }
+        COMMANDS = commands.toArray(new String[commands.size()]);
+        Arrays.sort(COMMANDS);
+    }
+
+    private static class DirectoryNames {
+        final FileTime lastModified;
+        final String[] names;
+
+        DirectoryNames(FileTime lastModified, String[] names) {
+            this.lastModified = lastModified;
+            this.names = names;
+        }
+    }
+
+    private final Function<String, Path> resolver;
+
+    private final LinkedHashMap<Path, DirectoryNames> cache =
+            new LinkedHashMap<Path, DirectoryNames>(MAX_CACHED, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, DirectoryNames> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    /**
+     * @param resolver resolves path typed by user, returns {@code null} if it can't be resolved
+     */
+    ShellCompleter(Function<String, Path> resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Returns sorted names of the directory entries.
+     */
+    synchronized String[] getNames(Path directory) throws IOException {
+        FileTime lastModified = Files.getLastModifiedTime(directory);
+
+        DirectoryNames names = cache.get(directory);
+        if (names == null || !names.lastModified.equals(lastModified)) {
+            List<String> list = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    list.add(path.getFileName().toString());
+                }
+            }
+
+            String[] array = list.toArray(new String[list.size()]);
+            Arrays.sort(array);
+
+            names = new DirectoryNames(lastModified, array);
+            cache.put(directory, names);
+        }
+
+        return names.names;
+    }
+
+    /**
+     * Completes the last word of {@code command}: the first word is completed as a command name,
+     * the others as paths. Returns completed command or {@code null} if there is nothing to add.
+     */
+    String complete(String command) {
+        int wordStart = command.length();
+        while (wordStart > 0 && !Character.isWhitespace(command.charAt(wordStart - 1))) {
+            wordStart--;
+        }
+
+        String word = command.substring(wordStart);
+        String completed;
+
+        if (command.substring(0, wordStart).trim().isEmpty()) {
+            completed = complete(COMMANDS, word, null);
+        } else {
+            int slash = word.lastIndexOf('/');
+            String directory = word.substring(0, slash + 1);
+
+            Path path = resolver.apply(directory.isEmpty() ? "." : directory);
+            if (path == null || !Files.isDirectory(path)) {
+                return null;
+            }
+
+            try {
+                completed = complete(getNames(path), word.substring(slash + 1), path);
+            } catch (IOException err) {
+                return null;
+            }
+
+            if (completed != null) {
+                completed = directory + completed;
+            }
+        }
+
+        if (completed == null || completed.equals(word)) {
+            return null;
+        }
+        return command.substring(0, wordStart) + completed;
+    }
+
+    /**
+     * Returns the longest common prefix of {@code names} starting with {@code prefix}. The only
+     * matching name is followed by "/" if it is a directory or an archive, by " " otherwise.
+     */
+    private static String complete(String[] names, String prefix, Path directory) {
+        int from = lowerBound(names, prefix);
+        int to = prefixEnd(names, prefix, from);
+
+        if (from >= to) {
+            return null;
+        }
+
+        if (to - from == 1) {
+            String name = names[from];
+            if (directory != null) {
+                Path path = directory.resolve(name);
+                if (Files.isDirectory(path) || ShellArchives.isArchive(path)) {
+                    return name + "/";
+                }
+            }
+            return name + " ";
+        }
+
+        // names are sorted, so the first and the last of the range have the shortest common prefix
+        String first = names[from];
+        String last = names[to - 1];
+        int length = 0;
+        while (length < first.length() && length < last.length() && first.charAt(length) == last.charAt(length)) {
+            length++;
+        }
+        return first.substring(0, length);
+    }
+
+    /**
+     * Returns end of the range of names with {@code prefix} which starts at {@code from}:
+     * names are sorted, so all of them follow each other.
+     */
+    private static int prefixEnd(String[] names, String prefix, int from) {
+        int low = from, high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBound(String[] names, String key) {
+        int low = 0, high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
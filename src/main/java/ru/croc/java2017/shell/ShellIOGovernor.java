@@ -0,0 +1,178 @@
+package ru.croc.java2017.shell;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Session-level limiter of disk I/O: token buckets for bytes per second and for file system
+ * operations per second. Commands call {@link #acquireBytes(long)} and {@link #acquireOperations(long)}
+ * before the corresponding I/O and are put to sleep when the bucket is empty.
+ * While both limits are off, acquiring is a single volatile read.
+ */
+public class ShellIOGovernor {
+    public static final long UNLIMITED = 0;
+
+    /**
+     * Bucket which holds at most one second worth of tokens. Tokens may go negative:
+     * the caller which took more than available sleeps until the debt is paid off.
+     */
+    private static class TokenBucket {
+        private long rate = UNLIMITED;
+        private double tokens;
+        private long lastRefill;
+
+        synchronized void setRate(long rate) {
+            this.rate = rate;
+            this.tokens = rate;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized long getRate() {
+            return rate;
+        }
+
+        /**
+         * Takes {@code amount} tokens and returns how long the caller has to wait, in nanoseconds.
+         */
+        synchronized long take(long amount) {
+            if (rate == UNLIMITED) {
+                return 0;
+            }
+
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - lastRefill) * (double) rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+
+            tokens -= amount;
+            return tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+    }
+
+    private final TokenBucket bytes = new TokenBucket();
+    private final TokenBucket operations = new TokenBucket();
+
+    private volatile boolean limited = false;
+
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong throttledCommands = new AtomicLong();
+
+    private long commandThrottledCount;
+
+    public long getBytesPerSecond() {
+        return bytes.getRate();
+    }
+
+    public long getOperationsPerSecond() {
+        return operations.getRate();
+    }
+
+    /**
+     * Sets limits, {@link #UNLIMITED} turns the corresponding limit off.
+     */
+    public void setLimits(long bytesPerSecond, long operationsPerSecond) {
+        if (bytesPerSecond < 0 || operationsPerSecond < 0) {
+            throw new IllegalArgumentException("Limits can't be negative");
+        }
+
+        bytes.setRate(bytesPerSecond);
+        operations.setRate(operationsPerSecond);
+        limited = bytesPerSecond != UNLIMITED || operationsPerSecond != UNLIMITED;
+    }
+
+    /**
+     * Returns how many times I/O was put to sleep.
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Returns total time I/O has been sleeping, in nanoseconds.
+     */
+    public long getThrottledNanos() {
+        return throttledNanos.get();
+    }
+
+    /**
+     * Returns number of commands which have been throttled at least once.
+     */
+    public long getThrottledCommands() {
+        return throttledCommands.get();
+    }
+
+    void beginCommand() {
+        commandThrottledCount = throttledCount.get();
+    }
+
+    void endCommand() {
+        if (throttledCount.get() != commandThrottledCount) {
+            throttledCommands.incrementAndGet();
+        }
+    }
+
+    public void acquireBytes(long amount) {
+        if (limited) {
+            sleep(bytes.take(amount));
+        }
+    }
+
+    public void acquireOperations(long amount) {
+        if (limited) {
+            sleep(operations.take(amount));
+        }
+    }
+
+    private void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+
+        throttledCount.incrementAndGet();
+        long start = System.nanoTime();
+        long deadline = start + nanos;
+
+        for (long left = nanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+
+        throttledNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns stream which acquires bytes before every read.
+     */
+    InputStream wrap(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                acquireBytes(1);
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    acquireBytes(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                acquireBytes(skipped);
+                return skipped;
+            }
+        };
+    }
+}
@@ -22,6 +22,10 @@ public class ShellKeyListener implements NativeKeyListener {
     private List<String> processedCommands = new LinkedList<>();
     private int processedCommandsIndex;
 
+    private StringBuilder typedCommand = new StringBuilder();
+    private boolean commandEdited = false;
+    private boolean commandEntered = false;
+
     public String getCurrentCommand() {
         return currentCommand;
     }
@@ -31,20 +35,65 @@ public class ShellKeyListener implements NativeKeyListener {
         processedCommandsIndex = processedCommands.size();
     }
 
+    /**
+     * Returns {@code command} with its last word completed or {@code null} if there is nothing to complete.
+     */
+    protected String complete(String command) {
+        return null;
+    }
+
+    private void setTypedCommand(String command) {
+        typedCommand.setLength(0);
+        typedCommand.append(command);
+    }
+
     public void nativeKeyPressed(NativeKeyEvent e) {
         int keyCode = e.getKeyCode();
 
+        // the command is still read by the shell after Enter, it's reset by the next key
+        if (commandEntered && keyCode != NativeKeyEvent.VC_ENTER) {
+            commandEntered = false;
+            currentCommand = null;
+        }
+
         switch (keyCode) {
             case NativeKeyEvent.VC_UP:
                 if (processedCommandsIndex > 0) {
                     processedCommandsIndex -= 1;
                 }
+                commandEdited = false;
                 break;
             case NativeKeyEvent.VC_DOWN:
                 if (processedCommandsIndex < processedCommands.size()) {
                     processedCommandsIndex += 1;
                 }
+                commandEdited = false;
                 break;
+            case NativeKeyEvent.VC_TAB:
+                String completed = complete(typedCommand.toString());
+                if (completed != null) {
+                    setTypedCommand(completed);
+                    currentCommand = completed;
+                    commandEdited = true;
+                }
+                return;
+            case NativeKeyEvent.VC_BACKSPACE:
+                if (typedCommand.length() > 0) {
+                    typedCommand.setLength(typedCommand.length() - 1);
+                }
+                if (commandEdited) {
+                    currentCommand = typedCommand.toString();
+                }
+                return;
+            case NativeKeyEvent.VC_ENTER:
+                typedCommand.setLength(0);
+                commandEdited = false;
+                commandEntered = true;
+                return;
+        }
+
+        if (commandEdited) {
+            return;
         }
 
         if (processedCommandsIndex < processedCommands.size()) {
@@ -52,6 +101,10 @@ public class ShellKeyListener implements NativeKeyListener {
         } else {
             currentCommand = null;
         }
+
+        if (keyCode == NativeKeyEvent.VC_UP || keyCode == NativeKeyEvent.VC_DOWN) {
+            setTypedCommand(currentCommand != null ? currentCommand : "");
+        }
     }
 
     public void nativeKeyReleased(NativeKeyEvent e) {
@@ -59,6 +112,14 @@ public class ShellKeyListener implements NativeKeyListener {
     }
 
     public void nativeKeyTyped(NativeKeyEvent e) {
+        char c = e.getKeyChar();
+        if (c == NativeKeyEvent.CHAR_UNDEFINED || Character.isISOControl(c)) {
+            return;
+        }
 
+        typedCommand.append(c);
+        if (commandEdited) {
+            currentCommand = typedCommand.toString();
+        }
     }
-}
\ No newline at end of file
+}
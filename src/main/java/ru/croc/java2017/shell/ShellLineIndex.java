@@ -0,0 +1,204 @@
+package ru.croc.java2017.shell;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Sparse index of line offsets: the byte offset of every {@link #LINES_PER_ENTRY}-th line.
+ * Seeking to a line costs one lookup plus a forward scan of less than {@link #LINES_PER_ENTRY} lines.
+ * Index is valid while size, modification time and tail of the indexed part are unchanged;
+ * if the file has only grown, the index is extended from the previously indexed size.
+ * Lines end with "\n", "\r" or "\r\n", the same as for {@link BufferedReader#readLine()}.
+ */
+class ShellLineIndex {
+    static final int LINES_PER_ENTRY = 4096;
+
+    private static final int INDEX_MAGIC   = 0x4c494458;
+    private static final int INDEX_VERSION = 2;
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final int TAIL_SIZE = 4096;
+
+    private final String file;
+
+    private long size;
+    private long lastModified;
+    private long tailChecksum;
+    private long lines;
+    private boolean endsWithReturn;
+
+    private long[] offsets = new long[] {0};
+    private int offsetsCount = 1;
+
+    private ShellLineIndex(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns index that is up to date with the file, reusing {@code index} when it is still valid.
+     */
+    static ShellLineIndex update(ShellLineIndex index, Path path, ShellIOGovernor governor) throws IOException {
+        long currentSize = Files.size(path);
+        long currentModified = Files.getLastModifiedTime(path).toMillis();
+
+        if (index != null && index.file.equals(path.toString())) {
+            if (index.size == currentSize && index.lastModified == currentModified) {
+                return index;
+            }
+
+            if (index.size < currentSize && index.tailChecksum == tailChecksum(path, index.size)) {
+                index.scan(path, currentSize, currentModified, governor);
+                return index;
+            }
+        }
+
+        index = new ShellLineIndex(path.toString());
+        index.scan(path, currentSize, currentModified, governor);
+        return index;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns offset of the closest indexed line which is not after {@code line} (zero-based).
+     */
+    long floorOffset(long line) {
+        return offsets[(int) Math.min(line / LINES_PER_ENTRY, offsetsCount - 1)];
+    }
+
+    /**
+     * Returns number (zero-based) of the line located at {@link #floorOffset(long)}.
+     */
+    long floorLine(long line) {
+        return Math.min(line / LINES_PER_ENTRY, offsetsCount - 1) * LINES_PER_ENTRY;
+    }
+
+    private void scan(Path path, long newSize, long newModified, ShellIOGovernor governor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+            long position = size;
+
+            channel.position(position);
+            while (position < newSize) {
+                buffer.clear();
+                buffer.limit((int) Math.min(SCAN_BUFFER_SIZE, newSize - position));
+
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                governor.acquireBytes(read);
+
+                for (int i = 0; i < read; i++) {
+                    byte b = bytes[i];
+                    if (b == '\n' && endsWithReturn) {
+                        // "\r\n" is a single line end, the next line starts after "\n"
+                        if (offsets[offsetsCount - 1] == position + i) {
+                            offsets[offsetsCount - 1]++;
+                        }
+                    } else if ((b == '\n' || b == '\r') && ++lines % LINES_PER_ENTRY == 0) {
+                        addOffset(position + i + 1);
+                    }
+                    endsWithReturn = b == '\r';
+                }
+                position += read;
+            }
+
+            size = position;
+        }
+
+        lastModified = newModified;
+        tailChecksum = tailChecksum(path, size);
+    }
+
+    private void addOffset(long offset) {
+        if (offsetsCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsetsCount * 2);
+        }
+        offsets[offsetsCount++] = offset;
+    }
+
+    private static long tailChecksum(Path path, long end) throws IOException {
+        CRC32 checksum = new CRC32();
+        long start = Math.max(0, end - TAIL_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(start);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the whole tail
+            }
+        }
+
+        checksum.update(buffer.array(), 0, buffer.position());
+        return checksum.getValue();
+    }
+
+    static ShellLineIndex load(Path cacheFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (input.readInt() != INDEX_MAGIC || input.readInt() != INDEX_VERSION) {
+                throw new IOException("Unsupported line index " + cacheFile);
+            }
+
+            ShellLineIndex index = new ShellLineIndex(input.readUTF());
+            index.size = input.readLong();
+            index.lastModified = input.readLong();
+            index.tailChecksum = input.readLong();
+            index.lines = input.readLong();
+            index.endsWithReturn = input.readBoolean();
+
+            index.offsetsCount = input.readInt();
+            index.offsets = new long[Math.max(1, index.offsetsCount)];
+            for (int i = 0; i < index.offsetsCount; i++) {
+                index.offsets[i] = input.readLong();
+            }
+            return index;
+        }
+    }
+
+    void save(Path cacheFile) throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        Path tmpFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                output.writeInt(INDEX_MAGIC);
+                output.writeInt(INDEX_VERSION);
+                output.writeUTF(file);
+                output.writeLong(size);
+                output.writeLong(lastModified);
+                output.writeLong(tailChecksum);
+                output.writeLong(lines);
+                output.writeBoolean(endsWithReturn);
+
+                output.writeInt(offsetsCount);
+                for (int i = 0; i < offsetsCount; i++) {
+                    output.writeLong(offsets[i]);
+                }
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Returns name of the cache file for the indexed file.
+     */
+    static String cacheFileName(Path path) {
+        CRC32 checksum = new CRC32();
+        checksum.update(path.toString().getBytes(StandardCharsets.UTF_8));
+        return String.format("%s-%08x.idx", path.getFileName(), checksum.getValue());
+    }
+}
@@ -0,0 +1,293 @@
+package ru.croc.java2017.shell;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+/**
+ * Output of commands in one of the session modes. In machine-readable modes records are encoded
+ * straight into a byte buffer as UTF-8, without intermediate strings:
+ * <ul>
+ *     <li>{@code nul} - every field is written as {@code key=value\0}, record ends with an extra {@code \0};</li>
+ *     <li>{@code json} - every record is a JSON object on its own line (JSON Lines).</li>
+ * </ul>
+ * The buffer is written to {@link System#out} when it is full and after every command.
+ */
+public class ShellOutput {
+    public enum Mode {
+        TEXT ("text"),
+        NUL  ("nul"),
+        JSON ("json");
+
+        private final String mode;
+
+        private Mode(String mode) {
+            this.mode = mode;
+        }
+
+        public static Mode getEnumMode(String mode) {
+            for (Mode value : values()) {
+                if (value.mode.equals(mode)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return mode;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private Mode mode = Mode.TEXT;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int length = 0;
+    private boolean firstField;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        flush();
+        this.mode = mode;
+    }
+
+    public boolean isText() {
+        return mode == Mode.TEXT;
+    }
+
+    /**
+     * Prints error message: as a line in text mode, as a record with the "error" field otherwise.
+     */
+    public void error(String message) {
+        if (isText()) {
+            flush();
+            System.out.println(message);
+        } else {
+            beginRecord();
+            field("error", message);
+            endRecord();
+        }
+    }
+
+    public void beginRecord() {
+        firstField = true;
+        if (mode == Mode.JSON) {
+            put('{');
+        }
+    }
+
+    public void endRecord() {
+        if (mode == Mode.JSON) {
+            put('}');
+            put('\n');
+        } else {
+            put(0);
+        }
+
+        if (length >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void key(String key) {
+        if (mode == Mode.JSON) {
+            if (!firstField) {
+                put(',');
+            }
+            putString(key, true);
+            put(':');
+        } else {
+            putString(key, false);
+            put('=');
+        }
+        firstField = false;
+    }
+
+    private void endField() {
+        if (mode == Mode.NUL) {
+            put(0);
+        }
+    }
+
+    public void field(String key, CharSequence value) {
+        key(key);
+        putString(value, mode == Mode.JSON);
+        endField();
+    }
+
+    public void field(String key, long value) {
+        key(key);
+        putLong(value);
+        endField();
+    }
+
+    public void field(String key, boolean value) {
+        key(key);
+        putAscii(value ? "true" : "false");
+        endField();
+    }
+
+    /**
+     * Returns stream which writes every line of its bytes as a record with the only field {@code key}.
+     * Lines are decoded as UTF-8; the last line without '\n' is written on close.
+     */
+    public OutputStream lineRecords(String key) {
+        return new OutputStream() {
+            private byte[] line = new byte[256];
+            private int lineLength = 0;
+
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                int end = offset + length;
+                while (offset < end) {
+                    int newLine = offset;
+                    while (newLine < end && bytes[newLine] != '\n') {
+                        newLine++;
+                    }
+
+                    if (line.length < lineLength + newLine - offset) {
+                        line = Arrays.copyOf(line, Math.max(lineLength + newLine - offset, 2 * line.length));
+                    }
+                    System.arraycopy(bytes, offset, line, lineLength, newLine - offset);
+                    lineLength += newLine - offset;
+
+                    if (newLine < end) {
+                        writeLine();
+                    }
+                    offset = newLine + 1;
+                }
+            }
+
+            private void writeLine() {
+                beginRecord();
+                field(key, new String(line, 0, lineLength, StandardCharsets.UTF_8));
+                endRecord();
+                lineLength = 0;
+            }
+
+            @Override
+            public void close() {
+                if (lineLength > 0) {
+                    writeLine();
+                }
+                ShellOutput.this.flush();
+            }
+        };
+    }
+
+    /**
+     * Writes everything encoded so far to {@link System#out}.
+     */
+    public void flush() {
+        if (length > 0) {
+            PrintStream out = System.out;
+            out.write(buffer, 0, length);
+            out.flush();
+            length = 0;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void put(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void putAscii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii("-9223372036854775808");
+            return;
+        }
+
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    private void putString(CharSequence value, boolean json) {
+        if (json) {
+            put('"');
+        }
+
+        // at most 6 bytes per char: either "\\u001f" escape or a 3 bytes long UTF-8 sequence
+        ensureCapacity(value.length() * 6 + 1);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (json && (c == '"' || c == '\\')) {
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) c;
+            } else if (json && c < 0x20) {
+                buffer[length++] = '\\';
+                buffer[length++] = 'u';
+                buffer[length++] = '0';
+                buffer[length++] = '0';
+                buffer[length++] = HEX_DIGITS[c >> 4];
+                buffer[length++] = HEX_DIGITS[c & 0xf];
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xc0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xe0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        if (json) {
+            put('"');
+        }
+    }
+}
@@ -0,0 +1,706 @@
+package ru.croc.java2017.shell;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * External merge sort of lines within a memory budget. Lines are never turned into strings:
+ * input is read into a byte array, which is sorted as an array of line numbers with offsets
+ * of lines and their keys kept in primitive arrays. When the budget is exhausted, the sorted
+ * run is spilled to a temporary file; runs are merged k-way at the end.
+ * <p>
+ * Lines are compared as unsigned bytes (or as numbers with {@code -n}) by the key field first,
+ * then by the whole line. With {@code -u} lines with equal keys keep their input order instead,
+ * and only the first of them is written.
+ */
+public class ShellSort {
+    public static final long DEFAULT_MEMORY = 256L * 1024 * 1024;
+    public static final int WHOLE_LINE = 0;
+    public static final int BLANKS = -1;
+
+    static final long MIN_MEMORY = 64 * 1024;
+    static final int MERGE_WIDTH = 128;
+
+    /**
+     * Memory used by a line besides its bytes: offsets of the line and its key,
+     * its position in the sorted order and in the merge buffer.
+     */
+    private static final int LINE_OVERHEAD = 4 * 4 + 2 * 4;
+
+    private static final int INITIAL_LINES = 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final int SEQUENTIAL_THRESHOLD = 8192;
+    private static final int INSERTION_THRESHOLD = 16;
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    private static final Path TEMP_DIR = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    private int field = WHOLE_LINE;
+    private int separator = BLANKS;
+    private boolean numeric = false;
+    private boolean unique = false;
+    private long memory = Math.min(DEFAULT_MEMORY, Runtime.getRuntime().maxMemory() / 4);
+
+    private ShellIOGovernor governor = new ShellIOGovernor();
+
+    private int peakBuffer = 0;
+
+    /**
+     * Sets number of the key field, starting from 1, or {@link #WHOLE_LINE}.
+     */
+    public void setField(int field) {
+        if (field < 0) {
+            throw new IllegalArgumentException("Field can't be negative");
+        }
+        this.field = field;
+    }
+
+    /**
+     * Sets separator of fields, {@link #BLANKS} means runs of spaces and tabs.
+     */
+    public void setSeparator(int separator) {
+        this.separator = separator;
+    }
+
+    public void setNumeric(boolean numeric) {
+        this.numeric = numeric;
+    }
+
+    public void setUnique(boolean unique) {
+        this.unique = unique;
+    }
+
+    /**
+     * Sets memory budget of a run, in bytes.
+     */
+    public void setMemory(long memory) {
+        if (memory < MIN_MEMORY) {
+            throw new IllegalArgumentException("Memory budget is too small");
+        }
+        this.memory = memory;
+    }
+
+    void setGovernor(ShellIOGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Returns the largest size the buffer of a run has reached, in bytes.
+     */
+    int getPeakBuffer() {
+        return peakBuffer;
+    }
+
+    /**
+     * Opens output of the sort, it's called when the input has been read completely,
+     * so the output may replace the input file.
+     */
+    public interface Output {
+        OutputStream open() throws IOException;
+    }
+
+    /**
+     * Sorts lines of {@code input} into {@code output}. Every written line ends with '\n'.
+     */
+    public void sort(InputStream input, Output output) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        List<Path> temporary = new ArrayList<>();
+
+        try {
+            long dataBudget = memory / 2;
+            Chunk chunk = new Chunk((int) Math.min(dataBudget, MAX_ARRAY_SIZE),
+                    (int) Math.min(dataBudget / LINE_OVERHEAD, MAX_ARRAY_SIZE));
+
+            boolean end = false;
+            while (true) {
+                chunk.scan();
+
+                if (chunk.count == chunk.maxLines) {
+                    runs.add(spill(chunk, temporary));
+                    chunk.compact();
+                    continue;
+                } else if (chunk.length == chunk.data.length && !end) {
+                    if (chunk.data.length < chunk.capacity || chunk.count == 0) {
+                        // a single line may be longer than the budget
+                        chunk.grow();
+                    } else {
+                        runs.add(spill(chunk, temporary));
+                        chunk.compact();
+                    }
+                    continue;
+                } else if (end) {
+                    break;
+                }
+
+                int read = input.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+                if (read < 0) {
+                    end = true;
+                } else {
+                    chunk.length += read;
+                }
+            }
+
+            // the last line may not end with '\n'
+            if (chunk.lineStart < chunk.length) {
+                chunk.add(chunk.length);
+            }
+
+            if (runs.isEmpty()) {
+                chunk.sort();
+                try (OutputStream buffered = new BufferedOutputStream(output.open(), RUN_BUFFER_SIZE)) {
+                    chunk.write(buffered);
+                }
+                return;
+            }
+
+            if (chunk.count > 0) {
+                runs.add(spill(chunk, temporary));
+            }
+            chunk = null;
+
+            while (runs.size() > MERGE_WIDTH) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MERGE_WIDTH) {
+                    List<Path> group = runs.subList(i, Math.min(i + MERGE_WIDTH, runs.size()));
+                    Path run = createRun(temporary);
+                    merged.add(run);
+                    try (OutputStream runOutput = newRunOutput(run)) {
+                        merge(group, runOutput);
+                    }
+                    for (Path path : group) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+                runs = merged;
+            }
+
+            try (OutputStream buffered = new BufferedOutputStream(output.open(), RUN_BUFFER_SIZE)) {
+                merge(runs, buffered);
+            }
+        } finally {
+            for (Path run : temporary) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private Path createRun(List<Path> temporary) throws IOException {
+        governor.acquireOperations(1);
+        Path run = Files.createTempFile(TEMP_DIR, "croc-shell-sort", ".run");
+        temporary.add(run);
+        return run;
+    }
+
+    /**
+     * Returns buffered output to the run, bytes are acquired when the buffer is written.
+     */
+    private OutputStream newRunOutput(Path run) throws IOException {
+        FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new BufferedOutputStream(new FilterOutputStream(Channels.newOutputStream(channel)) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                governor.acquireBytes(length);
+                out.write(bytes, offset, length);
+            }
+        }, RUN_BUFFER_SIZE);
+    }
+
+    private Path spill(Chunk chunk, List<Path> temporary) throws IOException {
+        Path run = createRun(temporary);
+
+        try (OutputStream output = newRunOutput(run)) {
+            chunk.sort();
+            chunk.write(output);
+        }
+        return run;
+    }
+
+    private void merge(List<Path> runs, OutputStream output) throws IOException {
+        // runs are in input order, so with -u equal keys are taken from the earliest run first
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), (RunReader a, RunReader b) -> {
+            int result = unique ? compareKeys(a.line, b.line) : compare(a.line, b.line);
+            return result != 0 ? result : Integer.compare(a.index, b.index);
+        });
+        List<RunReader> readers = new ArrayList<>();
+
+        try {
+            for (Path run : runs) {
+                governor.acquireOperations(1);
+                RunReader reader = new RunReader(readers.size(),
+                        governor.wrap(Channels.newInputStream(FileChannel.open(run, StandardOpenOption.READ))));
+                readers.add(reader);
+
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            Line previous = null;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                Line line = reader.line;
+
+                if (!unique || previous == null || compareKeys(previous, line) != 0) {
+                    output.write(line.bytes, 0, line.length);
+                    output.write('\n');
+
+                    if (unique) {
+                        if (previous == null) {
+                            previous = new Line();
+                        }
+                        previous.set(line.bytes, 0, line.length);
+                    }
+                }
+
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.input.close();
+            }
+        }
+    }
+
+    /**
+     * Returns offsets of the key in {@code bytes} packed as {@code start << 32 | end}.
+     */
+    private long key(byte[] bytes, int start, int end) {
+        if (field == WHOLE_LINE) {
+            return (long) start << 32 | end;
+        }
+
+        int i = start;
+        if (separator == BLANKS) {
+            for (int f = 1; ; f++) {
+                while (i < end && isBlank(bytes[i])) {
+                    i++;
+                }
+                int keyStart = i;
+                while (i < end && !isBlank(bytes[i])) {
+                    i++;
+                }
+                if (f == field || i == end) {
+                    return f == field ? (long) keyStart << 32 | i : (long) end << 32 | end;
+                }
+            }
+        } else {
+            for (int f = 1; ; f++) {
+                int keyStart = i;
+                while (i < end && bytes[i] != (byte) separator) {
+                    i++;
+                }
+                if (f == field) {
+                    return (long) keyStart << 32 | i;
+                } else if (i == end) {
+                    return (long) end << 32 | end;
+                }
+                i++;
+            }
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static int skipDigits(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] >= '0' && bytes[start] <= '9') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Compares leading numbers of the keys: blanks, optional minus, digits and decimal fraction.
+     * Numbers are compared digit by digit, so they are exact at any length; keys without
+     * a number are equal to zero.
+     */
+    private static int compareNumbers(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+        while (aStart < aEnd && isBlank(a[aStart])) {
+            aStart++;
+        }
+        while (bStart < bEnd && isBlank(b[bStart])) {
+            bStart++;
+        }
+
+        boolean aNegative = aStart < aEnd && a[aStart] == '-';
+        if (aNegative) {
+            aStart++;
+        }
+        boolean bNegative = bStart < bEnd && b[bStart] == '-';
+        if (bNegative) {
+            bStart++;
+        }
+
+        while (aStart < aEnd && a[aStart] == '0') {
+            aStart++;
+        }
+        while (bStart < bEnd && b[bStart] == '0') {
+            bStart++;
+        }
+
+        int aInteger = skipDigits(a, aStart, aEnd);
+        int bInteger = skipDigits(b, bStart, bEnd);
+
+        int aFraction = aInteger < aEnd && a[aInteger] == '.' ? aInteger + 1 : aInteger;
+        int bFraction = bInteger < bEnd && b[bInteger] == '.' ? bInteger + 1 : bInteger;
+        int aFractionEnd = aFraction > aInteger ? skipDigits(a, aFraction, aEnd) : aFraction;
+        int bFractionEnd = bFraction > bInteger ? skipDigits(b, bFraction, bEnd) : bFraction;
+
+        // trailing zeros of fractions don't change the number
+        while (aFractionEnd > aFraction && a[aFractionEnd - 1] == '0') {
+            aFractionEnd--;
+        }
+        while (bFractionEnd > bFraction && b[bFractionEnd - 1] == '0') {
+            bFractionEnd--;
+        }
+
+        int aSign = aInteger == aStart && aFractionEnd == aFraction ? 0 : aNegative ? -1 : 1;
+        int bSign = bInteger == bStart && bFractionEnd == bFraction ? 0 : bNegative ? -1 : 1;
+        if (aSign != bSign || aSign == 0) {
+            return Integer.compare(aSign, bSign);
+        }
+
+        int result = Integer.compare(aInteger - aStart, bInteger - bStart);
+        if (result == 0) {
+            result = compareBytes(a, aStart, aInteger, b, bStart, bInteger);
+        }
+        if (result == 0) {
+            result = compareBytes(a, aFraction, aFractionEnd, b, bFraction, bFractionEnd);
+        }
+        return aSign * Integer.signum(result);
+    }
+
+    private static int compareBytes(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[aStart + i] & 0xff) - (b[bStart + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+
+    private int compareKeys(byte[] a, int aKeyStart, int aKeyEnd, byte[] b, int bKeyStart, int bKeyEnd) {
+        if (numeric) {
+            return compareNumbers(a, aKeyStart, aKeyEnd, b, bKeyStart, bKeyEnd);
+        }
+        return compareBytes(a, aKeyStart, aKeyEnd, b, bKeyStart, bKeyEnd);
+    }
+
+    private int compareKeys(Line a, Line b) {
+        return compareKeys(a.bytes, a.keyStart, a.keyEnd, b.bytes, b.keyStart, b.keyEnd);
+    }
+
+    private int compare(Line a, Line b) {
+        int result = compareKeys(a, b);
+        return result != 0 ? result : compareBytes(a.bytes, 0, a.length, b.bytes, 0, b.length);
+    }
+
+    /**
+     * Lines of a run: bytes of the lines and their offsets in primitive arrays.
+     */
+    private class Chunk {
+        final int capacity;
+        final int maxLines;
+
+        byte[] data;
+        int length = 0;
+
+        int lineStart = 0;
+        int scanned = 0;
+        int count = 0;
+
+        int[] starts = new int[0];
+        int[] ends = new int[0];
+        int[] keyStarts = new int[0];
+        int[] keyEnds = new int[0];
+
+        int[] order = new int[0];
+        int[] buffer = new int[0];
+
+        Chunk(int capacity, int maxLines) {
+            this.capacity = capacity;
+            this.maxLines = Math.max(1, maxLines);
+            this.data = new byte[Math.min(capacity, RUN_BUFFER_SIZE)];
+            peakBuffer = Math.max(peakBuffer, data.length);
+        }
+
+        /**
+         * Adds lines which have been read completely, while there is room for them.
+         */
+        void scan() {
+            for (; scanned < length && count < maxLines; scanned++) {
+                if (data[scanned] == '\n') {
+                    add(scanned);
+                }
+            }
+        }
+
+        /**
+         * Adds line from {@code lineStart} to {@code end}.
+         */
+        void add(int end) {
+            if (count == starts.length) {
+                int lines = (int) Math.min(Math.max(INITIAL_LINES, 2L * count), maxLines);
+                starts = Arrays.copyOf(starts, lines);
+                ends = Arrays.copyOf(ends, lines);
+                keyStarts = Arrays.copyOf(keyStarts, lines);
+                keyEnds = Arrays.copyOf(keyEnds, lines);
+            }
+
+            long key = key(data, lineStart, end);
+            starts[count] = lineStart;
+            ends[count] = end;
+            keyStarts[count] = (int) (key >>> 32);
+            keyEnds[count] = (int) key;
+
+            count++;
+            lineStart = end + 1;
+        }
+
+        /**
+         * Grows the buffer up to the capacity, beyond it only if not a single line fits into it.
+         */
+        void grow() throws IOException {
+            int limit = data.length < capacity ? capacity : MAX_ARRAY_SIZE;
+            if (data.length == limit) {
+                throw new IOException("Line is too long");
+            }
+            data = Arrays.copyOf(data, (int) Math.min(2L * data.length, limit));
+            peakBuffer = Math.max(peakBuffer, data.length);
+        }
+
+        /**
+         * Forgets spilled lines and moves the unfinished line to the beginning of the buffer.
+         */
+        void compact() {
+            System.arraycopy(data, lineStart, data, 0, length - lineStart);
+            length -= lineStart;
+            scanned -= lineStart;
+            lineStart = 0;
+            count = 0;
+        }
+
+        void sort() {
+            if (order.length < count) {
+                order = new int[count];
+                buffer = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+
+            ForkJoinPool.commonPool().invoke(new SortTask(this, 0, count));
+        }
+
+        int compareKeys(int a, int b) {
+            return ShellSort.this.compareKeys(data, keyStarts[a], keyEnds[a], data, keyStarts[b], keyEnds[b]);
+        }
+
+        /**
+         * Compares lines {@code a} and {@code b}; with {@code -u} lines with equal keys are
+         * ordered by their numbers, which follow the input.
+         */
+        int compare(int a, int b) {
+            int result = compareKeys(a, b);
+            if (result != 0) {
+                return result;
+            }
+            return unique ? Integer.compare(a, b) : compareBytes(data, starts[a], ends[a], data, starts[b], ends[b]);
+        }
+
+        void write(OutputStream output) throws IOException {
+            for (int i = 0; i < count; i++) {
+                int line = order[i];
+                if (unique && i > 0 && compareKeys(order[i - 1], line) == 0) {
+                    continue;
+                }
+
+                output.write(data, starts[line], ends[line] - starts[line]);
+                output.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Parallel merge sort of line numbers: halves are sorted concurrently and merged through
+     * the buffer array.
+     */
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+
+        SortTask(Chunk chunk, int from, int to) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                sort(chunk, from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(chunk, from, middle), new SortTask(chunk, middle, to));
+            merge(chunk, from, middle, to);
+        }
+
+        private static void sort(Chunk chunk, int from, int to) {
+            int[] order = chunk.order;
+
+            if (to - from <= INSERTION_THRESHOLD) {
+                for (int i = from + 1; i < to; i++) {
+                    int line = order[i];
+                    int j = i - 1;
+                    for (; j >= from && chunk.compare(order[j], line) > 0; j--) {
+                        order[j + 1] = order[j];
+                    }
+                    order[j + 1] = line;
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            sort(chunk, from, middle);
+            sort(chunk, middle, to);
+            merge(chunk, from, middle, to);
+        }
+
+        private static void merge(Chunk chunk, int from, int middle, int to) {
+            int[] order = chunk.order;
+            if (chunk.compare(order[middle - 1], order[middle]) <= 0) {
+                return;
+            }
+
+            int[] buffer = chunk.buffer;
+            System.arraycopy(order, from, buffer, from, to - from);
+
+            int i = from, j = middle, k = from;
+            while (i < middle && j < to) {
+                order[k++] = chunk.compare(buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+            }
+            while (i < middle) {
+                order[k++] = buffer[i++];
+            }
+            while (j < to) {
+                order[k++] = buffer[j++];
+            }
+        }
+    }
+
+    /**
+     * Line of a run being merged, with the offsets of its key.
+     */
+    private class Line {
+        byte[] bytes = new byte[256];
+        int length;
+        int keyStart;
+        int keyEnd;
+
+        void set(byte[] source, int start, int end) {
+            length = end - start;
+            if (bytes.length < length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length, 2 * bytes.length));
+            }
+            System.arraycopy(source, start, bytes, 0, length);
+            updateKey();
+        }
+
+        void updateKey() {
+            long key = key(bytes, 0, length);
+            keyStart = (int) (key >>> 32);
+            keyEnd = (int) key;
+        }
+    }
+
+    /**
+     * Reader of a spilled run: lines are cut straight out of the read buffer.
+     */
+    private class RunReader {
+        final int index;
+        final InputStream input;
+        final Line line = new Line();
+
+        private final byte[] buffer = new byte[RUN_BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+
+        /**
+         * @param index position of the run among the merged ones
+         */
+        RunReader(int index, InputStream input) {
+            this.index = index;
+            this.input = input;
+        }
+
+        /**
+         * Reads the next line of the run, returns {@code false} at the end of the run.
+         */
+        boolean next() throws IOException {
+            int length = 0;
+
+            while (true) {
+                if (position == limit) {
+                    limit = input.read(buffer);
+                    position = 0;
+
+                    if (limit < 0) {
+                        limit = 0;
+                        if (length == 0) {
+                            return false;
+                        }
+                        break;
+                    }
+                }
+
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+
+                int size = end - position;
+                if (line.bytes.length < length + size) {
+                    line.bytes = Arrays.copyOf(line.bytes, Math.max(length + size, 2 * line.bytes.length));
+                }
+                System.arraycopy(buffer, position, line.bytes, length, size);
+                length += size;
+
+                if (end < limit) {
+                    position = end + 1;
+                    break;
+                }
+                position = end;
+            }
+
+            line.length = length;
+            line.updateKey();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ru.croc.java2017.shell;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.stream.LongStream;
+
+/**
+ * Line, word and byte counts of a file. File is split into regions which are
+ * mapped into memory and counted in parallel; words crossing a region boundary
+ * are fixed up when the counts of neighbouring regions are merged.
+ */
+public class ShellWordCount {
+    static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private long lines;
+    private long words;
+    private long bytes;
+
+    private boolean startsInWord;
+    private boolean endsInWord;
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getWords() {
+        return words;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    static ShellWordCount count(Path path, ShellIOGovernor governor) throws IOException {
+        return count(path, REGION_SIZE, governor);
+    }
+
+    static ShellWordCount count(Path path, long regionSize, ShellIOGovernor governor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long regions = (size + regionSize - 1) / regionSize;
+
+            return LongStream.range(0, regions).parallel()
+                    .mapToObj((long region) -> {
+                        long start = region * regionSize;
+                        try {
+                            return countRegion(channel, start, Math.min(regionSize, size - start), governor);
+                        } catch (IOException err) {
+                            throw new UncheckedIOException(err);
+                        }
+                    })
+                    .reduce(new ShellWordCount(), ShellWordCount::merge);
+        } catch (UncheckedIOException err) {
+            throw err.getCause();
+        }
+    }
+
+    private static ShellWordCount countRegion(FileChannel channel, long start, long length,
+                                              ShellIOGovernor governor) throws IOException {
+        ShellWordCount count = new ShellWordCount();
+
+        ByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (UnsupportedOperationException err) {
+            buffer = null;
+        }
+
+        if (buffer != null) {
+            governor.acquireBytes(length);
+            count.countBuffer(buffer);
+        } else {
+            // file system without memory mapping, fall back to positional reads
+            buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, length));
+            for (long position = start; position < start + length; ) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), start + length - position));
+
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+
+                governor.acquireBytes(read);
+                buffer.flip();
+                count.countBuffer(buffer);
+                position += read;
+            }
+        }
+
+        return count;
+    }
+
+    private void countBuffer(ByteBuffer buffer) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+
+        if (position == limit) {
+            return;
+        }
+
+        long lines = this.lines;
+        long words = this.words;
+        boolean inWord = endsInWord;
+
+        if (bytes == 0) {
+            startsInWord = !isSpace(buffer.get(position));
+        }
+
+        for (int i = position; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                lines++;
+            }
+
+            boolean space = isSpace(b);
+            if (!space && !inWord) {
+                words++;
+            }
+            inWord = !space;
+        }
+
+        this.lines = lines;
+        this.words = words;
+        this.bytes += limit - position;
+        this.endsInWord = inWord;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    void add(ShellWordCount count) {
+        lines += count.lines;
+        words += count.words;
+        bytes += count.bytes;
+    }
+
+    private static ShellWordCount merge(ShellWordCount left, ShellWordCount right) {
+        if (left.bytes == 0) {
+            return right;
+        } else if (right.bytes == 0) {
+            return left;
+        }
+
+        ShellWordCount count = new ShellWordCount();
+        count.lines = left.lines + right.lines;
+        count.words = left.words + right.words;
+        count.bytes = left.bytes + right.bytes;
+        count.startsInWord = left.startsInWord;
+        count.endsInWord = right.endsInWord;
+
+        if (left.endsInWord && right.startsInWord) {
+            count.words--;
+        }
+
+        return count;
+    }
+}
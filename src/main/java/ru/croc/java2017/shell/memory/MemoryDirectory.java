@@ -0,0 +1,21 @@
+package ru.croc.java2017.shell.memory;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Directory node. Lookups are lock-free, structural changes are made under the tree lock of the file system.
+ */
+class MemoryDirectory extends MemoryNode {
+    final ConcurrentNavigableMap<String, MemoryNode> children = new ConcurrentSkipListMap<>();
+
+    @Override
+    boolean isDirectory() {
+        return true;
+    }
+
+    @Override
+    long size() {
+        return 0;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.croc.java2017.shell.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Regular file node. Contents are kept either in a heap byte array or in an off-heap buffer.
+ */
+class MemoryFile extends MemoryNode {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final boolean direct;
+
+    private ByteBuffer contents;
+    private int size;
+
+    MemoryFile(boolean direct) {
+        this.direct = direct;
+        this.contents = allocate(0);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized int read(ByteBuffer dst, long position) {
+        if (position >= size) {
+            return -1;
+        }
+
+        int length = (int) Math.min(dst.remaining(), size - position);
+        ByteBuffer src = contents.duplicate();
+        src.limit((int) position + length).position((int) position);
+        dst.put(src);
+        return length;
+    }
+
+    synchronized int write(ByteBuffer src, long position) throws IOException {
+        int length = src.remaining();
+        long end = position + length;
+
+        if (end > MAX_CAPACITY) {
+            throw new IOException("File is too large for the memory file system");
+        }
+
+        ensureCapacity((int) end);
+        if (position > size) {
+            // fill the gap after the current end of file with zeros
+            ByteBuffer gap = contents.duplicate();
+            gap.position(size).limit((int) position);
+            while (gap.hasRemaining()) {
+                gap.put((byte) 0);
+            }
+        }
+
+        ByteBuffer dst = contents.duplicate();
+        dst.position((int) position);
+        dst.put(src);
+
+        size = Math.max(size, (int) end);
+        touch();
+        return length;
+    }
+
+    synchronized void truncate(long newSize) {
+        if (newSize < size) {
+            size = (int) newSize;
+            touch();
+        }
+    }
+
+    synchronized void copyFrom(MemoryFile file) throws IOException {
+        ByteBuffer src;
+        synchronized (file) {
+            src = file.contents.duplicate();
+            src.position(0).limit(file.size);
+        }
+
+        size = 0;
+        write(src, 0);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= contents.capacity()) {
+            return;
+        }
+
+        long newCapacity = Math.max(INITIAL_CAPACITY, (long) contents.capacity() * 2);
+        newCapacity = Math.min(MAX_CAPACITY, Math.max(newCapacity, capacity));
+
+        ByteBuffer newContents = allocate((int) newCapacity);
+        ByteBuffer src = contents.duplicate();
+        src.position(0).limit(size);
+        newContents.put(src);
+        contents = newContents;
+    }
+}
@@ -0,0 +1,234 @@
+package ru.croc.java2017.shell.memory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * File system which keeps the whole tree in memory. Contents are lost when it is closed.
+ *
+ * <pre>
+ *     FileSystem fileSystem = MemoryFileSystem.newFileSystem();
+ *     Shell shell = new Shell(fileSystem);
+ * </pre>
+ */
+public class MemoryFileSystem extends FileSystem {
+    /**
+     * Environment key: if {@code true}, file contents are kept off-heap in direct buffers.
+     */
+    public static final String ENV_DIRECT = "direct";
+
+    private final MemoryFileSystemProvider provider;
+    private final String name;
+    private final boolean direct;
+
+    private final MemoryDirectory root = new MemoryDirectory();
+    private final Object treeLock = new Object();
+
+    private volatile boolean open = true;
+
+    MemoryFileSystem(MemoryFileSystemProvider provider, String name, Map<String, ?> env) {
+        this.provider = provider;
+        this.name = name;
+        this.direct = Boolean.TRUE.equals(env.get(ENV_DIRECT))
+                || "true".equals(env.get(ENV_DIRECT));
+    }
+
+    /**
+     * Creates a new empty file system with a unique name, file contents are kept on heap.
+     */
+    public static FileSystem newFileSystem() throws IOException {
+        return newFileSystem(Collections.<String, Object>emptyMap());
+    }
+
+    public static FileSystem newFileSystem(Map<String, ?> env) throws IOException {
+        URI uri = URI.create(MemoryFileSystemProvider.SCHEME + "://" + UUID.randomUUID() + "/");
+        return MemoryFileSystemProvider.getInstance().newFileSystem(uri, env);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    MemoryDirectory getRootDirectory() {
+        return root;
+    }
+
+    /**
+     * Lock of structural changes of the tree. Lookups and file contents don't need it.
+     */
+    Object getTreeLock() {
+        return treeLock;
+    }
+
+    void checkOpen() {
+        if (!open) {
+            throw new ClosedFileSystemException();
+        }
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            provider.removeFileSystem(name);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.<Path>singletonList(new MemoryPath(this, true));
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Collections.singleton("basic");
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        StringBuilder path = new StringBuilder(first);
+        for (String name : more) {
+            if (!name.isEmpty()) {
+                if (path.length() > 0) {
+                    path.append('/');
+                }
+                path.append(name);
+            }
+        }
+        return MemoryPath.parse(this, path.toString());
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        int index = syntaxAndPattern.indexOf(':');
+        if (index <= 0) {
+            throw new IllegalArgumentException(syntaxAndPattern);
+        }
+
+        String syntax = syntaxAndPattern.substring(0, index);
+        String pattern = syntaxAndPattern.substring(index + 1);
+
+        final Pattern regex;
+        if (syntax.equalsIgnoreCase("regex")) {
+            regex = Pattern.compile(pattern);
+        } else if (syntax.equalsIgnoreCase("glob")) {
+            regex = Pattern.compile(globToRegex(pattern));
+        } else {
+            throw new UnsupportedOperationException("Syntax '" + syntax + "' not recognized");
+        }
+
+        return (Path path) -> regex.matcher(path.toString()).matches();
+    }
+
+    private static final Map<Character, String> GLOB_ESCAPED = new HashMap<>();
+
+    static {
+        for (char c : "\\^$.|+()[]{}".toCharArray()) {
+            GLOB_ESCAPED.put(c, "\\" + c);
+        }
+    }
+
+    /**
+     * Converts glob into regular expression. Supports "*", "**", "?", "[...]" and "{a,b}".
+     */
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false;
+
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i);
+                    if (end < 0) {
+                        throw new PatternSyntaxException("Missing ']'", glob, i);
+                    }
+                    String range = glob.substring(i + 1, end);
+                    regex.append('[').append(range.startsWith("!") ? "^" + range.substring(1) : range).append(']');
+                    i = end;
+                    break;
+                case '{':
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    regex.append(inGroup ? ")" : "\\}");
+                    inGroup = false;
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    break;
+                default:
+                    String escaped = GLOB_ESCAPED.get(c);
+                    if (escaped != null) {
+                        regex.append(escaped);
+                    } else {
+                        regex.append(c);
+                    }
+            }
+        }
+
+        return regex.toString();
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException("User principals are not supported");
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException("Watching is not supported");
+    }
+}
@@ -0,0 +1,491 @@
+package ru.croc.java2017.shell.memory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.nio.file.spi.FileSystemProvider;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provider of {@link MemoryFileSystem}s, URIs look like {@code memory://name/path}.
+ */
+public class MemoryFileSystemProvider extends FileSystemProvider {
+    public static final String SCHEME = "memory";
+
+    private static volatile MemoryFileSystemProvider fallbackInstance;
+
+    private final Map<String, MemoryFileSystem> fileSystems = new ConcurrentHashMap<>();
+
+    static MemoryFileSystemProvider getInstance() {
+        for (FileSystemProvider provider : FileSystemProvider.installedProviders()) {
+            if (provider instanceof MemoryFileSystemProvider) {
+                return (MemoryFileSystemProvider) provider;
+            }
+        }
+
+        if (fallbackInstance == null) {
+            synchronized (MemoryFileSystemProvider.class) {
+                if (fallbackInstance == null) {
+                    fallbackInstance = new MemoryFileSystemProvider();
+                }
+            }
+        }
+        return fallbackInstance;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    private String getFileSystemName(URI uri) {
+        if (!SCHEME.equalsIgnoreCase(uri.getScheme()) || uri.getAuthority() == null) {
+            throw new IllegalArgumentException("URI is not a memory file system URI: " + uri);
+        }
+        return uri.getAuthority();
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        String name = getFileSystemName(uri);
+        if (uri.getPath() != null && !uri.getPath().isEmpty() && !uri.getPath().equals("/")) {
+            throw new IllegalArgumentException("Path component should be \"/\": " + uri);
+        }
+
+        MemoryFileSystem fileSystem = new MemoryFileSystem(this, name, env);
+        if (fileSystems.putIfAbsent(name, fileSystem) != null) {
+            throw new FileSystemAlreadyExistsException(name);
+        }
+        return fileSystem;
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        MemoryFileSystem fileSystem = fileSystems.get(getFileSystemName(uri));
+        if (fileSystem == null) {
+            throw new FileSystemNotFoundException(uri.toString());
+        }
+        return fileSystem;
+    }
+
+    void removeFileSystem(String name) {
+        fileSystems.remove(name);
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        return getFileSystem(uri).getPath(uri.getPath() != null && !uri.getPath().isEmpty() ? uri.getPath() : "/");
+    }
+
+    private static MemoryPath toMemoryPath(Path path) {
+        if (!(path instanceof MemoryPath)) {
+            throw new ProviderMismatchException();
+        }
+
+        MemoryPath memoryPath = (MemoryPath) path;
+        memoryPath.getFileSystem().checkOpen();
+        return (MemoryPath) memoryPath.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns node located at {@code path} or {@code null} if there is no such node.
+     */
+    private static MemoryNode lookup(MemoryPath path) {
+        MemoryNode node = path.getFileSystem().getRootDirectory();
+
+        for (String name : path.names()) {
+            if (!(node instanceof MemoryDirectory)) {
+                return null;
+            }
+
+            node = ((MemoryDirectory) node).children.get(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static MemoryNode lookupExisting(MemoryPath path) throws NoSuchFileException {
+        MemoryNode node = lookup(path);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return node;
+    }
+
+    private static MemoryDirectory lookupParent(MemoryPath path) throws IOException {
+        Path parent = path.getParent();
+        if (parent == null) {
+            throw new FileSystemException(path.toString(), null, "Root directory");
+        }
+
+        MemoryNode node = lookup((MemoryPath) parent);
+        if (node == null) {
+            throw new NoSuchFileException(parent.toString());
+        } else if (!node.isDirectory()) {
+            throw new NotDirectoryException(parent.toString());
+        }
+        return (MemoryDirectory) node;
+    }
+
+    private static String getName(MemoryPath path) {
+        return path.getFileName().toString();
+    }
+
+    /**
+     * Links {@code node} into {@code directory}, replacing existing file or empty directory if allowed.
+     * Must be called under the tree lock.
+     */
+    private static void link(MemoryDirectory directory, String name, MemoryNode node,
+                             boolean replace, MemoryPath path) throws IOException {
+        if (directory.deleted) {
+            throw new NoSuchFileException(path.getParent().toString());
+        }
+
+        MemoryNode existing = directory.children.get(name);
+        if (existing != null) {
+            if (!replace) {
+                throw new FileAlreadyExistsException(path.toString());
+            }
+            unlink(directory, name, existing, path);
+        }
+
+        directory.children.put(name, node);
+        directory.touch();
+    }
+
+    /**
+     * Unlinks {@code node} from {@code directory}. Must be called under the tree lock.
+     */
+    private static void unlink(MemoryDirectory directory, String name, MemoryNode node,
+                               MemoryPath path) throws IOException {
+        if (node instanceof MemoryDirectory && !((MemoryDirectory) node).children.isEmpty()) {
+            throw new DirectoryNotEmptyException(path.toString());
+        }
+
+        if (!directory.children.remove(name, node)) {
+            throw new NoSuchFileException(path.toString());
+        }
+        node.deleted = true;
+        directory.touch();
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+                                              FileAttribute<?>... attrs) throws IOException {
+        return newFileChannel(path, options, attrs);
+    }
+
+    @Override
+    public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options,
+                                      FileAttribute<?>... attrs) throws IOException {
+        MemoryPath memoryPath = toMemoryPath(path);
+
+        boolean append = options.contains(StandardOpenOption.APPEND);
+        boolean writable = options.contains(StandardOpenOption.WRITE) || append;
+        boolean readable = options.contains(StandardOpenOption.READ) || !writable;
+
+        if (append && options.contains(StandardOpenOption.READ)) {
+            throw new IllegalArgumentException("READ + APPEND not allowed");
+        }
+
+        MemoryNode node = lookup(memoryPath);
+        if (writable && options.contains(StandardOpenOption.CREATE_NEW)) {
+            if (node != null) {
+                throw new FileAlreadyExistsException(path.toString());
+            }
+            node = createFile(memoryPath, false);
+        } else if (node == null) {
+            if (!writable || !options.contains(StandardOpenOption.CREATE)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            node = createFile(memoryPath, true);
+        }
+
+        if (node.isDirectory()) {
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        }
+
+        MemoryFile file = (MemoryFile) node;
+        if (writable && options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.truncate(0);
+        }
+        return new MemoryFileChannel(file, readable, writable, append);
+    }
+
+    private static MemoryNode createFile(MemoryPath path, boolean allowExisting) throws IOException {
+        MemoryDirectory parent = lookupParent(path);
+        MemoryFile file = new MemoryFile(path.getFileSystem().isDirect());
+
+        synchronized (path.getFileSystem().getTreeLock()) {
+            MemoryNode existing = parent.children.get(getName(path));
+            if (existing != null && allowExisting) {
+                return existing;
+            }
+            link(parent, getName(path), file, false, path);
+        }
+        return file;
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter)
+            throws IOException {
+        MemoryPath memoryPath = toMemoryPath(dir);
+        MemoryNode node = lookupExisting(memoryPath);
+
+        if (!node.isDirectory()) {
+            throw new NotDirectoryException(dir.toString());
+        }
+
+        List<Path> entries = new ArrayList<>();
+        for (String name : ((MemoryDirectory) node).children.keySet()) {
+            Path entry = dir.resolve(name);
+            if (filter.accept(entry)) {
+                entries.add(entry);
+            }
+        }
+
+        return new DirectoryStream<Path>() {
+            private boolean iterated = false;
+
+            @Override
+            public Iterator<Path> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("Iterator already obtained");
+                }
+                iterated = true;
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+                // entries are a snapshot, nothing to release
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        MemoryPath memoryPath = toMemoryPath(dir);
+        if (memoryPath.getNameCount() == 0) {
+            throw new FileAlreadyExistsException(dir.toString());
+        }
+
+        MemoryDirectory parent = lookupParent(memoryPath);
+        synchronized (memoryPath.getFileSystem().getTreeLock()) {
+            link(parent, getName(memoryPath), new MemoryDirectory(), false, memoryPath);
+        }
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        MemoryPath memoryPath = toMemoryPath(path);
+        MemoryNode node = lookupExisting(memoryPath);
+
+        if (memoryPath.getNameCount() == 0) {
+            throw new FileSystemException(path.toString(), null, "Root directory can't be deleted");
+        }
+
+        MemoryDirectory parent = lookupParent(memoryPath);
+        synchronized (memoryPath.getFileSystem().getTreeLock()) {
+            unlink(parent, getName(memoryPath), node, memoryPath);
+        }
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        MemoryPath sourcePath = toMemoryPath(source);
+        MemoryPath targetPath = toMemoryPath(target);
+        boolean replace = Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING);
+
+        MemoryNode node = lookupExisting(sourcePath);
+        if (sourcePath.equals(targetPath)) {
+            return;
+        }
+
+        MemoryNode copy;
+        if (node.isDirectory()) {
+            copy = new MemoryDirectory();
+        } else {
+            MemoryFile file = new MemoryFile(targetPath.getFileSystem().isDirect());
+            file.copyFrom((MemoryFile) node);
+            copy = file;
+        }
+
+        if (Arrays.asList(options).contains(StandardCopyOption.COPY_ATTRIBUTES)) {
+            BasicFileAttributes attributes = node.readAttributes();
+            copy.setTimes(attributes.lastModifiedTime(), attributes.lastAccessTime(), attributes.creationTime());
+        }
+
+        MemoryDirectory parent = lookupParent(targetPath);
+        synchronized (targetPath.getFileSystem().getTreeLock()) {
+            link(parent, getName(targetPath), copy, replace, targetPath);
+        }
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        MemoryPath sourcePath = toMemoryPath(source);
+        MemoryPath targetPath = toMemoryPath(target);
+        boolean replace = Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING);
+
+        if (sourcePath.getFileSystem() != targetPath.getFileSystem()) {
+            throw new ProviderMismatchException();
+        }
+
+        MemoryNode node = lookupExisting(sourcePath);
+        if (sourcePath.equals(targetPath)) {
+            return;
+        }
+        if (targetPath.startsWith(sourcePath)) {
+            throw new FileSystemException(source.toString(), target.toString(), "Target is inside the source");
+        }
+
+        MemoryDirectory sourceParent = lookupParent(sourcePath);
+        MemoryDirectory targetParent = lookupParent(targetPath);
+
+        synchronized (sourcePath.getFileSystem().getTreeLock()) {
+            if (sourceParent.children.get(getName(sourcePath)) != node) {
+                throw new NoSuchFileException(source.toString());
+            }
+
+            link(targetParent, getName(targetPath), node, replace, targetPath);
+            sourceParent.children.remove(getName(sourcePath), node);
+            sourceParent.touch();
+        }
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        if (path.equals(path2)) {
+            return true;
+        }
+        if (!(path2 instanceof MemoryPath)) {
+            return false;
+        }
+        return lookupExisting(toMemoryPath(path)) == lookupExisting(toMemoryPath(path2));
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) {
+        throw new UnsupportedOperationException("File stores are not supported");
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        MemoryNode node = lookupExisting(toMemoryPath(path));
+
+        // every node may be read and written; only directories may be searched
+        for (AccessMode mode : modes) {
+            if (mode == AccessMode.EXECUTE && !node.isDirectory()) {
+                throw new AccessDeniedException(path.toString());
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        if (type != BasicFileAttributeView.class) {
+            return null;
+        }
+
+        MemoryPath memoryPath = toMemoryPath(path);
+        return (V) new BasicFileAttributeView() {
+            @Override
+            public String name() {
+                return "basic";
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes() throws IOException {
+                return lookupExisting(memoryPath).readAttributes();
+            }
+
+            @Override
+            public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime)
+                    throws IOException {
+                lookupExisting(memoryPath).setTimes(lastModifiedTime, lastAccessTime, createTime);
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
+            throws IOException {
+        if (type != BasicFileAttributes.class) {
+            throw new UnsupportedOperationException("Attributes are not available: " + type.getName());
+        }
+        return (A) lookupExisting(toMemoryPath(path)).readAttributes();
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options)
+            throws IOException {
+        if (attributes.contains(":")) {
+            if (!attributes.startsWith("basic:")) {
+                throw new UnsupportedOperationException("View is not available: " + attributes);
+            }
+            attributes = attributes.substring("basic:".length());
+        }
+
+        BasicFileAttributes basic = lookupExisting(toMemoryPath(path)).readAttributes();
+        Map<String, Object> all = new HashMap<>();
+        all.put("lastModifiedTime", basic.lastModifiedTime());
+        all.put("lastAccessTime", basic.lastAccessTime());
+        all.put("creationTime", basic.creationTime());
+        all.put("size", basic.size());
+        all.put("isRegularFile", basic.isRegularFile());
+        all.put("isDirectory", basic.isDirectory());
+        all.put("isSymbolicLink", basic.isSymbolicLink());
+        all.put("isOther", basic.isOther());
+        all.put("fileKey", basic.fileKey());
+
+        Map<String, Object> result = new HashMap<>();
+        for (String name : attributes.split(",")) {
+            if (name.equals("*")) {
+                result.putAll(all);
+            } else if (all.containsKey(name)) {
+                result.put(name, all.get(name));
+            } else {
+                throw new IllegalArgumentException("Unknown attribute: " + name);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+        if (attribute.startsWith("basic:")) {
+            attribute = attribute.substring("basic:".length());
+        }
+
+        MemoryNode node = lookupExisting(toMemoryPath(path));
+        switch (attribute) {
+            case "lastModifiedTime":
+                node.setTimes((FileTime) value, null, null);
+                break;
+            case "lastAccessTime":
+                node.setTimes(null, (FileTime) value, null);
+                break;
+            case "creationTime":
+                node.setTimes(null, null, (FileTime) value);
+                break;
+            default:
+                throw new UnsupportedOperationException("Attribute can't be set: " + attribute);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.croc.java2017.shell.memory;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Node of the in-memory file tree: either a {@link MemoryDirectory} or a {@link MemoryFile}.
+ */
+abstract class MemoryNode {
+    private volatile FileTime creationTime;
+    private volatile FileTime lastModifiedTime;
+    private volatile FileTime lastAccessTime;
+
+    /**
+     * Set when the node is unlinked from its parent, guarded by the tree lock.
+     */
+    volatile boolean deleted;
+
+    MemoryNode() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        creationTime = now;
+        lastModifiedTime = now;
+        lastAccessTime = now;
+    }
+
+    abstract boolean isDirectory();
+
+    abstract long size();
+
+    void touch() {
+        lastModifiedTime = FileTime.fromMillis(System.currentTimeMillis());
+    }
+
+    void setTimes(FileTime lastModified, FileTime lastAccess, FileTime creation) {
+        if (lastModified != null) {
+            lastModifiedTime = lastModified;
+        }
+        if (lastAccess != null) {
+            lastAccessTime = lastAccess;
+        }
+        if (creation != null) {
+            creationTime = creation;
+        }
+    }
+
+    BasicFileAttributes readAttributes() {
+        final FileTime creation = creationTime;
+        final FileTime lastModified = lastModifiedTime;
+        final FileTime lastAccess = lastAccessTime;
+        final boolean directory = isDirectory();
+        final long size = size();
+
+        return new BasicFileAttributes() {
+            @Override
+            public FileTime lastModifiedTime() {
+                return lastModified;
+            }
+
+            @Override
+            public FileTime lastAccessTime() {
+                return lastAccess;
+            }
+
+            @Override
+            public FileTime creationTime() {
+                return creation;
+            }
+
+            @Override
+            public boolean isRegularFile() {
+                return !directory;
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return directory;
+            }
+
+            @Override
+            public boolean isSymbolicLink() {
+                return false;
+            }
+
+            @Override
+            public boolean isOther() {
+                return false;
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public Object fileKey() {
+                return MemoryNode.this;
+            }
+        };
+    }
+}
@@ -0,0 +1,316 @@
+package ru.croc.java2017.shell.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Path of the {@link MemoryFileSystem}. Names are separated by "/", the only root is "/".
+ */
+class MemoryPath implements Path {
+    private static final String SEPARATOR = "/";
+
+    private final MemoryFileSystem fileSystem;
+    private final boolean absolute;
+    private final String[] names;
+
+    MemoryPath(MemoryFileSystem fileSystem, boolean absolute, String... names) {
+        this.fileSystem = fileSystem;
+        this.absolute = absolute;
+        this.names = names;
+    }
+
+    static MemoryPath parse(MemoryFileSystem fileSystem, String path) {
+        if (path.indexOf('\u0000') >= 0) {
+            throw new InvalidPathException(path, "Nul character not allowed");
+        }
+
+        List<String> names = new ArrayList<>();
+        for (String name : path.split(SEPARATOR)) {
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+
+        return new MemoryPath(fileSystem, path.startsWith(SEPARATOR), names.toArray(new String[names.size()]));
+    }
+
+    String[] names() {
+        return names;
+    }
+
+    private MemoryPath checkPath(Path path) {
+        if (!(path instanceof MemoryPath) || ((MemoryPath) path).fileSystem != fileSystem) {
+            throw new ProviderMismatchException();
+        }
+        return (MemoryPath) path;
+    }
+
+    @Override
+    public MemoryFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
+    @Override
+    public Path getRoot() {
+        return absolute ? new MemoryPath(fileSystem, true) : null;
+    }
+
+    @Override
+    public Path getFileName() {
+        if (names.length == 0) {
+            return absolute ? null : this;
+        }
+        return new MemoryPath(fileSystem, false, names[names.length - 1]);
+    }
+
+    @Override
+    public Path getParent() {
+        if (names.length == 0 || (names.length == 1 && !absolute)) {
+            return null;
+        }
+        return new MemoryPath(fileSystem, absolute, Arrays.copyOf(names, names.length - 1));
+    }
+
+    @Override
+    public int getNameCount() {
+        return names.length;
+    }
+
+    @Override
+    public Path getName(int index) {
+        if (index < 0 || index >= names.length) {
+            throw new IllegalArgumentException();
+        }
+        return new MemoryPath(fileSystem, false, names[index]);
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        if (beginIndex < 0 || beginIndex >= endIndex || endIndex > names.length) {
+            throw new IllegalArgumentException();
+        }
+        return new MemoryPath(fileSystem, false, Arrays.copyOfRange(names, beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        if (!(other instanceof MemoryPath) || ((MemoryPath) other).fileSystem != fileSystem) {
+            return false;
+        }
+
+        MemoryPath path = (MemoryPath) other;
+        if (path.absolute != absolute || path.names.length > names.length) {
+            return false;
+        }
+
+        for (int i = 0; i < path.names.length; i++) {
+            if (!names[i].equals(path.names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startsWith(String other) {
+        return startsWith(parse(fileSystem, other));
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        if (!(other instanceof MemoryPath) || ((MemoryPath) other).fileSystem != fileSystem) {
+            return false;
+        }
+
+        MemoryPath path = (MemoryPath) other;
+        if (path.absolute) {
+            return equals(path);
+        }
+        if (path.names.length > names.length || (path.names.length == 0 && names.length > 0)) {
+            return false;
+        }
+
+        for (int i = 1; i <= path.names.length; i++) {
+            if (!names[names.length - i].equals(path.names[path.names.length - i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(String other) {
+        return endsWith(parse(fileSystem, other));
+    }
+
+    @Override
+    public Path normalize() {
+        List<String> normalized = new ArrayList<>();
+
+        for (String name : names) {
+            if (name.equals(".")) {
+                continue;
+            }
+
+            if (name.equals("..")) {
+                if (!normalized.isEmpty() && !normalized.get(normalized.size() - 1).equals("..")) {
+                    normalized.remove(normalized.size() - 1);
+                    continue;
+                } else if (absolute) {
+                    continue;
+                }
+            }
+            normalized.add(name);
+        }
+
+        return new MemoryPath(fileSystem, absolute, normalized.toArray(new String[normalized.size()]));
+    }
+
+    @Override
+    public Path resolve(Path other) {
+        MemoryPath path = checkPath(other);
+
+        if (path.absolute) {
+            return path;
+        } else if (path.names.length == 0) {
+            return this;
+        }
+
+        String[] resolved = Arrays.copyOf(names, names.length + path.names.length);
+        System.arraycopy(path.names, 0, resolved, names.length, path.names.length);
+        return new MemoryPath(fileSystem, absolute, resolved);
+    }
+
+    @Override
+    public Path resolve(String other) {
+        return resolve(parse(fileSystem, other));
+    }
+
+    @Override
+    public Path resolveSibling(Path other) {
+        Path parent = getParent();
+        return parent == null ? other : parent.resolve(other);
+    }
+
+    @Override
+    public Path resolveSibling(String other) {
+        return resolveSibling(parse(fileSystem, other));
+    }
+
+    @Override
+    public Path relativize(Path other) {
+        MemoryPath path = checkPath(other);
+
+        if (path.absolute != absolute) {
+            throw new IllegalArgumentException("'other' is different type of Path");
+        }
+
+        int common = 0;
+        while (common < names.length && common < path.names.length
+                && names[common].equals(path.names[common])) {
+            common++;
+        }
+
+        List<String> relative = new ArrayList<>();
+        for (int i = common; i < names.length; i++) {
+            relative.add("..");
+        }
+        relative.addAll(Arrays.asList(path.names).subList(common, path.names.length));
+
+        return new MemoryPath(fileSystem, false, relative.toArray(new String[relative.size()]));
+    }
+
+    @Override
+    public URI toUri() {
+        try {
+            return new URI(MemoryFileSystemProvider.SCHEME, fileSystem.getName(), toAbsolutePath().toString(), null);
+        } catch (URISyntaxException err) {
+            throw new AssertionError(err);
+        }
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+        return absolute ? this : new MemoryPath(fileSystem, true, names);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws IOException {
+        Path path = toAbsolutePath().normalize();
+        fileSystem.provider().checkAccess(path);
+        return path;
+    }
+
+    @Override
+    public File toFile() {
+        throw new UnsupportedOperationException("Memory path can't be converted to a file: " + this);
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException("Watching is not supported");
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) {
+        throw new UnsupportedOperationException("Watching is not supported");
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        List<Path> paths = new ArrayList<>();
+        for (String name : names) {
+            paths.add(new MemoryPath(fileSystem, false, name));
+        }
+        return paths.iterator();
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return toString().compareTo(checkPath(other).toString());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof MemoryPath)) {
+            return false;
+        }
+
+        MemoryPath path = (MemoryPath) other;
+        return path.fileSystem == fileSystem && path.absolute == absolute && Arrays.equals(path.names, names);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(names) + (absolute ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (absolute) {
+            builder.append(SEPARATOR);
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(names[i]);
+        }
+        return builder.toString();
+    }
+}
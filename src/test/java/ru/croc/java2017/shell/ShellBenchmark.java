@@ -0,0 +1,166 @@
+package ru.croc.java2017.shell;
+
+import ru.croc.java2017.shell.memory.MemoryFileSystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Replays a script through {@link Shell#processInputStream(InputStream, boolean)} on a memory
+ * file system and measures throughput, latency of a single command and peak heap usage.
+ */
+public class ShellBenchmark {
+    public static class Result {
+        public final long commands;
+        public final double opsPerSecond;
+        public final double p99Micros;
+        public final double peakHeapMb;
+
+        Result(long commands, double opsPerSecond, double p99Micros, double peakHeapMb) {
+            this.commands = commands;
+            this.opsPerSecond = opsPerSecond;
+            this.p99Micros = p99Micros;
+            this.peakHeapMb = peakHeapMb;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d commands, %.0f ops/sec, p99 %.1f us, peak heap %.1f MB",
+                    commands, opsPerSecond, p99Micros, peakHeapMb);
+        }
+    }
+
+    /**
+     * Gives the script to the shell one line per read, so the moment the shell asks for the next
+     * line is the moment the previous command has been completed.
+     */
+    private static class ScriptInputStream extends InputStream {
+        private final Iterator<String> lines;
+
+        private long[] timestamps = new long[1024];
+        private int count = 0;
+
+        private byte[] line = new byte[0];
+        private int position = 0;
+
+        ScriptInputStream(Iterator<String> lines) {
+            this.lines = lines;
+        }
+
+        private boolean nextLine() {
+            if (position < line.length) {
+                return true;
+            }
+
+            if (count == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+            }
+            timestamps[count++] = System.nanoTime();
+
+            if (!lines.hasNext()) {
+                return false;
+            }
+
+            line = (lines.next() + "\n").getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return nextLine() ? line[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextLine()) {
+                return -1;
+            }
+
+            int read = Math.min(length, line.length - position);
+            System.arraycopy(line, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        /**
+         * Returns durations of the commands in nanoseconds.
+         */
+        long[] latencies() {
+            long[] latencies = new long[Math.max(0, count - 1)];
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = timestamps[i + 1] - timestamps[i];
+            }
+            return latencies;
+        }
+    }
+
+    private static final PrintStream NULL_OUTPUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+        }
+    });
+
+    public static Result run(Iterator<String> script) throws IOException {
+        PrintStream systemOut = System.out;
+
+        try (FileSystem fileSystem = MemoryFileSystem.newFileSystem()) {
+            Shell shell = new Shell(fileSystem);
+            ScriptInputStream input = new ScriptInputStream(script);
+
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+
+            System.setOut(NULL_OUTPUT);
+            long start = System.nanoTime();
+            shell.processInputStream(input, false);
+            long elapsed = System.nanoTime() - start;
+            System.setOut(systemOut);
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+
+            long[] latencies = input.latencies();
+            Arrays.sort(latencies);
+            double p99 = latencies.length > 0 ? latencies[(int) ((latencies.length - 1) * 0.99)] : 0;
+
+            return new Result(
+                    latencies.length,
+                    latencies.length * 1e9 / elapsed,
+                    p99 / 1e3,
+                    peakHeap / (1024.0 * 1024.0));
+        } finally {
+            System.setOut(systemOut);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ru.croc.java2017.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import ru.croc.java2017.shell.Shell.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Archives are created on the default file system: the zip provider of JDK 8 can't open an archive
+ * located in another file system.
+ */
+public class TestArchives {
+    private Path directory;
+    private Shell shell;
+    private PrintStream systemOut;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("archives");
+        shell = new Shell();
+        shell.moveDirectory(directory.toString());
+
+        systemOut = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+
+        ByteArrayOutputStream inner = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(inner)) {
+            writeEntry(zip, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+        }
+
+        Path path = shell.getAbsolutePath("bundle.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(path))) {
+            writeEntry(zip, "dir/cheburek.txt", "Every breaking wave on the shore,\nTells the next one\n");
+            zip.putNextEntry(new ZipEntry("lib/inner.jar"));
+            zip.write(inner.toByteArray());
+            zip.closeEntry();
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.setOut(systemOut);
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, String text) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(text.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private String outputText() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void commonTest() throws ShellIOException {
+        Path current = shell.getAbsolutePath(".");
+
+        shell.moveDirectory("bundle.zip/dir");
+        shell.showFile("cheburek.txt", 1);
+        assertEquals("Every breaking wave on the shore,\n", outputText());
+
+        shell.moveDirectory("../..");
+        assertEquals(current, shell.getAbsolutePath("."));
+    }
+
+    @Test
+    public void nestedTest() throws ShellIOException {
+        shell.moveDirectory("bundle.zip");
+        shell.listDirectory("lib");
+        assertTrue(outputText().contains("inner.jar"));
+
+        output.reset();
+        shell.showFile("lib/inner.jar/META-INF/MANIFEST.MF", -1);
+        assertEquals("Manifest-Version: 1.0\n", outputText());
+
+        output.reset();
+        shell.showFile(directory.resolve("bundle.zip") + "/lib/inner.jar/META-INF/MANIFEST.MF", -1);
+        assertEquals("Manifest-Version: 1.0\n", outputText());
+    }
+
+    @Test
+    public void mountedOnce() throws ShellIOException {
+        Path first = shell.getAbsolutePath("bundle.zip/dir");
+        Path second = shell.getAbsolutePath("bundle.zip/dir");
+        assertSame(first.getFileSystem(), second.getFileSystem());
+    }
+
+    @Test
+    public void evictionTest() throws IOException {
+        shell.moveDirectory("bundle.zip/dir");
+        Path current = shell.getAbsolutePath(".");
+
+        List<FileSystem> fileSystems = new ArrayList<>();
+        for (int i = 0; i <= ShellArchives.MAX_MOUNTED; i++) {
+            Path copy = Files.copy(directory.resolve("bundle.zip"), directory.resolve("copy" + i + ".zip"));
+            fileSystems.add(shell.getAbsolutePath(copy + "/dir").getFileSystem());
+            assertTrue(Files.exists(copy));
+        }
+
+        // the archive of the current directory is the eldest one, but it's in use
+        assertTrue(current.getFileSystem().isOpen());
+        assertFalse(fileSystems.get(0).isOpen());
+        assertTrue(fileSystems.get(ShellArchives.MAX_MOUNTED).isOpen());
+    }
+
+    @Test
+    public void removeArchive() throws ShellIOException {
+        Path path = shell.remove("bundle.zip", false);
+        assertFalse(Files.exists(path));
+    }
+
+    @Test(expected = ShellIOException.class)
+    public void throwsReadOnly() throws ShellIOException {
+        shell.moveDirectory("bundle.zip");
+        shell.makeDirectory("dir2");
+    }
+
+    @Test(expected = ShellIOException.class)
+    public void throwsNotExist() throws ShellIOException {
+        shell.moveDirectory("bundle.zip/cheburek");
+    }
+}
@@ -0,0 +1,158 @@
+package ru.croc.java2017.shell;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import ru.croc.java2017.shell.Shell.*;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TestChecksum extends TestCreatorFolder {
+    private static final String MESSAGE = "Nobody inspects the spammish repetition";
+
+    private static String hash(ShellChecksum.Hasher hasher, byte[] bytes, int split) {
+        hasher.update(ByteBuffer.wrap(bytes, 0, split));
+        hasher.update(ByteBuffer.wrap(bytes, split, bytes.length - split));
+        return ShellChecksum.toHex(hasher.digest());
+    }
+
+    @Test
+    public void algorithmsTest() {
+        byte[] message = MESSAGE.getBytes(StandardCharsets.UTF_8);
+
+        for (int split = 0; split <= message.length; split++) {
+            assertEquals("fbcea83c8a378bf1", hash(new ShellChecksum.XxHash64Hasher(), message, split));
+        }
+
+        byte[] digits = "123456789".getBytes(StandardCharsets.UTF_8);
+        byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= 3; split++) {
+            assertEquals("e3069283", hash(new ShellChecksum.Crc32cHasher(), digits, split));
+            assertEquals("44bc2cf5ad770999", hash(new ShellChecksum.XxHash64Hasher(), abc, split));
+            assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                    hash(new ShellChecksum.Sha256Hasher(), abc, split));
+        }
+
+        assertEquals("ef46db3751d8e999", hash(new ShellChecksum.XxHash64Hasher(), new byte[0], 0));
+    }
+
+    @Test
+    public void checksumTest() throws IOException {
+        shell.makeFile("cheburek.txt");
+        shell.writeTextToFile("cheburek.txt", "abc");
+        shell.makeDirectory("dir");
+        Files.write(shell.getAbsolutePath("dir/b.txt"), MESSAGE.getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> sums = shell.checksum(Arrays.asList("cheburek.txt", "dir"),
+                ShellChecksum.Algorithm.XXHASH, true);
+        assertEquals(Arrays.asList("cheburek.txt", "dir/b.txt"), Arrays.asList(sums.keySet().toArray()));
+        assertEquals("44bc2cf5ad770999", sums.get("cheburek.txt"));
+        assertEquals("fbcea83c8a378bf1", sums.get("dir/b.txt"));
+
+        sums = shell.checksum(Collections.singletonList("cheburek.txt"), ShellChecksum.Algorithm.CRC32C, false);
+        assertEquals(1, sums.size());
+
+        try {
+            shell.checksum(Collections.singletonList("dir"), ShellChecksum.Algorithm.SHA256, false);
+            fail();
+        } catch (ShellIOException err) {
+            assertEquals("\"dir\" is not a file", err.getMessage());
+        }
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        shell.makeFile("cheburek.txt");
+        Path path = shell.writeTextToFile("cheburek.txt", "abc");
+        FileTime modified = Files.getLastModifiedTime(path);
+
+        ShellChecksum checksums = new ShellChecksum(new ShellIOGovernor());
+        assertEquals("44bc2cf5ad770999", checksums.checksum(path, ShellChecksum.Algorithm.XXHASH));
+
+        // same size and modification time: the cached checksum is returned
+        Files.write(path, "abd".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, modified);
+        assertEquals("44bc2cf5ad770999", checksums.checksum(path, ShellChecksum.Algorithm.XXHASH));
+
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified.toMillis() + 1000));
+        assertNotEquals("44bc2cf5ad770999", checksums.checksum(path, ShellChecksum.Algorithm.XXHASH));
+    }
+
+    @Test
+    public void mappedTest() throws IOException, NoSuchAlgorithmException {
+        // larger than the threshold, so the file is mapped; the tail isn't a multiple of 8 or 32
+        byte[] bytes = new byte[(int) (3 * ShellChecksum.MAP_THRESHOLD + 13)];
+        new Random(42).nextBytes(bytes);
+
+        Path path = Files.createTempFile("cheburek", ".bin");
+        try {
+            Files.write(path, bytes);
+            ShellChecksum checksums = new ShellChecksum(new ShellIOGovernor());
+
+            assertEquals(ShellChecksum.toHex(MessageDigest.getInstance("SHA-256").digest(bytes)),
+                    checksums.checksum(path, ShellChecksum.Algorithm.SHA256));
+            assertEquals(hash(new ShellChecksum.Crc32cHasher(), bytes, 5),
+                    checksums.checksum(path, ShellChecksum.Algorithm.CRC32C));
+            assertEquals(hash(new ShellChecksum.XxHash64Hasher(), bytes, 5),
+                    checksums.checksum(path, ShellChecksum.Algorithm.XXHASH));
+
+            long limit = ShellChecksum.MAP_THRESHOLD + 1;
+            assertEquals(hash(new ShellChecksum.XxHash64Hasher(), Arrays.copyOf(bytes, (int) limit), 5),
+                    checksums.checksum(path, ShellChecksum.Algorithm.XXHASH, limit));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void duplicatesTest() throws IOException {
+        byte[] block = new byte[(int) Shell.DUPLICATES_FIRST_BLOCK + 10];
+        new Random(42).nextBytes(block);
+
+        shell.makeDirectory("dir");
+        Files.createDirectory(shell.getAbsolutePath("dir/sub"));
+        Files.write(shell.getAbsolutePath("dir/a.bin"), block);
+        Files.write(shell.getAbsolutePath("dir/sub/b.bin"), block);
+        // same size and first block, differs at the end
+        block[block.length - 1]++;
+        Files.write(shell.getAbsolutePath("dir/c.bin"), block);
+        Files.write(shell.getAbsolutePath("dir/x.txt"), MESSAGE.getBytes(StandardCharsets.UTF_8));
+        Files.write(shell.getAbsolutePath("dir/y.txt"), MESSAGE.getBytes(StandardCharsets.UTF_8));
+        Files.write(shell.getAbsolutePath("dir/z.txt"), "another text of the same size as message"
+                .substring(0, MESSAGE.length()).getBytes(StandardCharsets.UTF_8));
+        Files.createFile(shell.getAbsolutePath("dir/empty1.txt"));
+        Files.createFile(shell.getAbsolutePath("dir/empty2.txt"));
+
+        List<List<String>> groups = shell.findDuplicates("dir", true);
+        assertEquals(2, groups.size());
+        assertEquals(Arrays.asList("dir/a.bin", "dir/sub/b.bin"), groups.get(0));
+        assertEquals(Arrays.asList("dir/x.txt", "dir/y.txt"), groups.get(1));
+
+        groups = shell.findDuplicates("dir", false);
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList("dir/x.txt", "dir/y.txt"), groups.get(0));
+
+        try {
+            shell.findDuplicates("dir/a.bin", true);
+            fail();
+        } catch (ShellIOException err) {
+            assertEquals("\"dir/a.bin\" is not a directory", err.getMessage());
+        }
+    }
+}
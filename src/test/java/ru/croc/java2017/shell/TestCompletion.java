@@ -0,0 +1,91 @@
+package ru.croc.java2017.shell;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class TestCompletion extends TestCreatorFolder {
+    private void createFile(String path) throws IOException {
+        Files.createFile(shell.getAbsolutePath(path));
+    }
+
+    @Test
+    public void commandTest() {
+        assertEquals("head ", shell.complete("he"));
+        assertEquals("  echo ", shell.complete("  ec"));
+        assertNull(shell.complete("mk"));
+        assertNull(shell.complete("l"));
+        assertNull(shell.complete("unknown"));
+    }
+
+    @Test
+    public void pathTest() throws IOException {
+        shell.makeDirectory("dir");
+        createFile("dir/cheburek.txt");
+        createFile("dir/chebupeli.txt");
+        createFile("dir/other.txt");
+
+        assertEquals("ls dir/", shell.complete("ls di"));
+        assertEquals("head dir/chebu", shell.complete("head dir/ch"));
+        assertEquals("head dir/cheburek.txt ", shell.complete("head dir/chebur"));
+        assertEquals("head -n 5 dir/other.txt ", shell.complete("head -n 5 dir/o"));
+        assertNull(shell.complete("head dir/chebu"));
+        assertNull(shell.complete("head dir/x"));
+        assertNull(shell.complete("head missing/x"));
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        shell.makeDirectory("dir");
+        createFile("dir/cheburek.txt");
+
+        ShellCompleter completer = new ShellCompleter((String path) -> {
+            try {
+                return shell.getAbsolutePath(path);
+            } catch (Shell.ShellIOException err) {
+                return null;
+            }
+        });
+
+        Path directory = shell.getAbsolutePath("dir");
+        String[] names = completer.getNames(directory);
+        assertArrayEquals(new String[] {"cheburek.txt"}, names);
+        assertSame(names, completer.getNames(directory));
+
+        createFile("dir/chebupeli.txt");
+        // don't depend on the clock resolution
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(Files.getLastModifiedTime(directory).toMillis() + 1000));
+
+        assertArrayEquals(new String[] {"chebupeli.txt", "cheburek.txt"}, completer.getNames(directory));
+        assertEquals("rm dir/chebu", completer.complete("rm dir/ch"));
+    }
+
+    @Test
+    public void largeDirectoryTest() throws IOException {
+        shell.makeDirectory("large");
+        for (int i = 0; i < 100000; i++) {
+            createFile("large/file" + i + ".txt");
+        }
+
+        assertEquals("head large/file", shell.complete("head large/f"));
+        assertEquals("head large/file99999.txt ", shell.complete("head large/file99999"));
+        assertNull(shell.complete("head large/file1234"));
+    }
+
+    @Test
+    public void maxCharTest() throws IOException {
+        shell.makeDirectory("dir");
+        createFile("dir/a\uffffb.txt");
+        createFile("dir/a\uffffc.txt");
+        createFile("dir/b.txt");
+
+        assertEquals("ls dir/a\uffff", shell.complete("ls dir/a"));
+        assertEquals("ls dir/a\uffffc.txt ", shell.complete("ls dir/a\uffffc"));
+    }
+}
@@ -3,20 +3,27 @@ package ru.croc.java2017.shell;
 import org.junit.After;
 import org.junit.Before;
 
+import ru.croc.java2017.shell.memory.MemoryFileSystem;
+
+import java.nio.file.FileSystem;
+
 public class TestCreatorFolder {
+    protected FileSystem fileSystem;
     protected Shell shell;
     private static final String PATH_INIT = "./tmp";
 
     @Before
     public void setUp() throws Exception {
-        shell = new Shell();
+        fileSystem = MemoryFileSystem.newFileSystem();
+        shell = new Shell(fileSystem);
         shell.makeDirectory(PATH_INIT);
         shell.moveDirectory(PATH_INIT);
     }
 
     @After
     public void tearDown() throws Exception {
-        shell = new Shell();
+        shell = new Shell(fileSystem);
         shell.remove(PATH_INIT, true);
+        fileSystem.close();
     }
 }
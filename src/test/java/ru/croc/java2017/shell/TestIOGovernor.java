@@ -0,0 +1,86 @@
+package ru.croc.java2017.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestIOGovernor extends TestCreatorFolder {
+    private PrintStream systemOut;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void captureOutput() {
+        systemOut = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @After
+    public void restoreOutput() {
+        System.setOut(systemOut);
+    }
+
+    private void process(String script) throws IOException {
+        shell.processInputStream(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    @Test
+    public void unlimitedTest() {
+        ShellIOGovernor governor = new ShellIOGovernor();
+        governor.acquireBytes(Long.MAX_VALUE);
+        governor.acquireOperations(Long.MAX_VALUE);
+        assertEquals(0, governor.getThrottledCount());
+    }
+
+    @Test
+    public void bytesTest() {
+        ShellIOGovernor governor = new ShellIOGovernor();
+        governor.setLimits(1000, ShellIOGovernor.UNLIMITED);
+
+        // the bucket is full, so the first second of traffic goes at once
+        governor.acquireBytes(1000);
+        assertEquals(0, governor.getThrottledCount());
+
+        governor.acquireBytes(300);
+        assertEquals(1, governor.getThrottledCount());
+        assertTrue(governor.getThrottledNanos() >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void commandTest() throws IOException {
+        StringBuilder script = new StringBuilder("limit -o 100\n");
+        for (int i = 0; i < 130; i++) {
+            script.append("mkfile cheburek").append(i).append(".txt\n");
+        }
+        script.append("limit off\nmkfile cheburek.txt\nlimit\n");
+
+        long start = System.nanoTime();
+        process(script.toString());
+        long elapsed = System.nanoTime() - start;
+
+        ShellIOGovernor governor = shell.getIOGovernor();
+        assertEquals(ShellIOGovernor.UNLIMITED, governor.getOperationsPerSecond());
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(250));
+        assertTrue(governor.getThrottledCommands() > 0);
+        assertTrue(governor.getThrottledCommands() <= 30);
+        assertTrue(output.toString().contains("bytes/sec: unlimited, operations/sec: unlimited, throttled commands: "));
+    }
+
+    @Test
+    public void illegalUsageTest() throws IOException {
+        process("limit -b 10X\nlimit -o\n");
+        assertTrue(output.toString().contains("Illegal usage of command \"limit\""));
+        assertEquals(ShellIOGovernor.UNLIMITED, shell.getIOGovernor().getBytesPerSecond());
+    }
+}
@@ -0,0 +1,85 @@
+package ru.croc.java2017.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+
+public class TestOutputMode extends TestCreatorFolder {
+    private PrintStream systemOut;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void captureOutput() {
+        systemOut = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @After
+    public void restoreOutput() {
+        System.setOut(systemOut);
+    }
+
+    private String outputText() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void process(String script) throws IOException {
+        shell.processInputStream(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    @Test
+    public void jsonTest() throws IOException {
+        shell.makeFile("she said \"\u043f\u0440\u0438\u0432\u0435\u0442\"\t\uD83D\uDE00.txt");
+        shell.makeDirectory("dir");
+
+        shell.setOutputMode(ShellOutput.Mode.JSON);
+        process("ls\nwc -l dir\nunknown\n");
+
+        String[] lines = outputText().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("{\"name\":\"dir\",\"directory\":true,\"readable\":true,"));
+        assertTrue(lines[1].startsWith(
+                "{\"name\":\"she said \\\"\u043f\u0440\u0438\u0432\u0435\u0442\\\"\\u0009\uD83D\uDE00.txt\","
+                        + "\"directory\":false,"));
+        assertTrue(lines[1].contains(",\"size\":0,\"modified\":"));
+        assertEquals("{\"error\":\"\\\"dir\\\" is not a file\"}", lines[2]);
+        assertEquals("{\"error\":\"Command \\\"unknown\\\" is not found\"}", lines[3]);
+    }
+
+    @Test
+    public void nulTest() throws IOException {
+        shell.makeFile("cheburek.txt");
+        shell.writeTextToFile("cheburek.txt", "one two\nthree\n");
+
+        // the prompt is printed before the mode is switched
+        process("output nul\n");
+        assertEquals(ShellOutput.Mode.NUL, shell.getOutputMode());
+
+        output.reset();
+        process("wc cheburek.txt\nls -1 -2\n");
+
+        assertEquals("name=cheburek.txt\0lines=2\0words=3\0bytes=14\0\0"
+                + "error=Illegal usage of command \"ls\"\0\0", outputText());
+    }
+
+    @Test
+    public void textTest() throws IOException {
+        process("output text\nunknown\n");
+        assertEquals(ShellOutput.Mode.TEXT, shell.getOutputMode());
+        assertTrue(outputText().contains("Command \"unknown\" is not found\n"));
+
+        output.reset();
+        process("output yaml\n");
+        assertTrue(outputText().contains("Illegal usage of command \"output\""));
+    }
+}
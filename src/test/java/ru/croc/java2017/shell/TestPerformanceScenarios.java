@@ -0,0 +1,219 @@
+package ru.croc.java2017.shell;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import ru.croc.java2017.shell.memory.MemoryFileSystem;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Macro-benchmarks of typical workloads with throughput, latency and heap budgets.
+ * Runs only in the "perf" profile: {@code mvn test -Pperf}.
+ * <p>
+ * Results are compared with {@code perf-baseline.properties}; the test fails when a scenario
+ * is slower or uses more memory than the baseline allows. Results of the run are written to
+ * {@code target/perf-results.properties}; to accept them as the new baseline run with
+ * {@code -Dperf.updateBaseline=true}. Size of the workloads is multiplied by {@code -Dperf.scale}.
+ */
+public class TestPerformanceScenarios {
+    private static final String BASELINE_RESOURCE = "/perf-baseline.properties";
+    private static final Path BASELINE_SOURCE = Paths.get("src", "test", "resources", "perf-baseline.properties");
+    private static final Path RESULTS_FILE = Paths.get("target", "perf-results.properties");
+
+    private static final double SCALE = Double.parseDouble(System.getProperty("perf.scale", "1"));
+    private static final double WARMUP_SCALE = 0.1;
+
+    private static Properties baseline;
+    private static Properties results;
+
+    @BeforeClass
+    public static void loadBaseline() throws IOException {
+        baseline = new Properties();
+        try (InputStream input = TestPerformanceScenarios.class.getResourceAsStream(BASELINE_RESOURCE)) {
+            if (input != null) {
+                baseline.load(input);
+            }
+        }
+        results = new Properties();
+    }
+
+    @AfterClass
+    public static void saveResults() throws IOException {
+        Files.createDirectories(RESULTS_FILE.getParent());
+        try (OutputStream output = Files.newOutputStream(RESULTS_FILE)) {
+            results.store(output, "Results of TestPerformanceScenarios, scale " + SCALE);
+        }
+
+        if (Boolean.getBoolean("perf.updateBaseline")) {
+            Properties updated = new Properties();
+            updated.putAll(baseline);
+            updated.putAll(results);
+            try (OutputStream output = Files.newOutputStream(BASELINE_SOURCE)) {
+                updated.store(output, "Baseline of TestPerformanceScenarios, see its documentation");
+            }
+        }
+    }
+
+    private static int size(int size, double scale) {
+        return Math.max(1, (int) (size * scale));
+    }
+
+    private static Stream<String> repeat(int count, IntFunction<String> command) {
+        return IntStream.range(0, count).mapToObj(command);
+    }
+
+    private static Stream<String> lines(String... commands) {
+        return Arrays.stream(commands);
+    }
+
+    private static void runScenario(String name, IntFunction<Stream<String>> script) throws IOException {
+        ShellBenchmark.run(script.apply(0).iterator());
+        ShellBenchmark.run(script.apply(1).iterator());
+
+        ShellBenchmark.Result result = ShellBenchmark.run(script.apply(2).iterator());
+        System.out.println(String.format("%-12s %s", name, result));
+
+        results.setProperty(name + ".opsPerSecond", String.format(Locale.ROOT, "%.0f", result.opsPerSecond));
+        results.setProperty(name + ".p99Micros", String.format(Locale.ROOT, "%.1f", result.p99Micros));
+        results.setProperty(name + ".peakHeapMb", String.format(Locale.ROOT, "%.1f", result.peakHeapMb));
+
+        if (Boolean.getBoolean("perf.updateBaseline")) {
+            return;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        double tolerance;
+
+        tolerance = budget("tolerance.opsPerSecond", 0.5);
+        String opsPerSecond = baseline.getProperty(name + ".opsPerSecond");
+        if (opsPerSecond != null && result.opsPerSecond < Double.parseDouble(opsPerSecond) * (1 - tolerance)) {
+            regressions.add(String.format("%.0f ops/sec is below baseline %s", result.opsPerSecond, opsPerSecond));
+        }
+
+        tolerance = budget("tolerance.p99Micros", 1.0);
+        String p99Micros = baseline.getProperty(name + ".p99Micros");
+        if (p99Micros != null && result.p99Micros > Double.parseDouble(p99Micros) * (1 + tolerance)) {
+            regressions.add(String.format("p99 %.1f us is above baseline %s us", result.p99Micros, p99Micros));
+        }
+
+        tolerance = budget("tolerance.peakHeapMb", 1.0);
+        String peakHeapMb = baseline.getProperty(name + ".peakHeapMb");
+        if (peakHeapMb != null && result.peakHeapMb > Double.parseDouble(peakHeapMb) * (1 + tolerance)) {
+            regressions.add(String.format("peak heap %.1f MB is above baseline %s MB", result.peakHeapMb, peakHeapMb));
+        }
+
+        assertTrue(name + ": " + String.join("; ", regressions), regressions.isEmpty());
+    }
+
+    private static double budget(String key, double defaultValue) {
+        return Double.parseDouble(baseline.getProperty(key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Returns scale of the run: 0 and 1 are warmup runs, 2 is the measured one.
+     */
+    private static double scale(int run) {
+        return run < 2 ? SCALE * WARMUP_SCALE : SCALE;
+    }
+
+    /**
+     * Tab completion in a directory of 100K files must answer in less than a millisecond:
+     * names are cached, so every completion is a binary search.
+     */
+    @Test
+    public void completion() throws IOException {
+        int width = size(100000, SCALE);
+
+        try (FileSystem fileSystem = MemoryFileSystem.newFileSystem()) {
+            Shell shell = new Shell(fileSystem);
+            shell.makeDirectory("large");
+            for (int i = 0; i < width; i++) {
+                Files.createFile(shell.getAbsolutePath("large/file" + i + ".txt"));
+            }
+
+            int count = Math.min(width, 10000);
+            long[] micros = new long[count];
+            for (int run = 0; run < 3; run++) {
+                for (int i = 0; i < count; i++) {
+                    long start = System.nanoTime();
+                    String completed = shell.complete("head large/file" + i + ".");
+                    micros[i] = (System.nanoTime() - start) / 1000;
+                    assertEquals("head large/file" + i + ".txt ", completed);
+                }
+            }
+
+            Arrays.sort(micros);
+            double p99Micros = micros[(int) (count * 0.99)];
+            System.out.println(String.format("%-12s %d files, p99 %.1f us", "completion", width, p99Micros));
+            results.setProperty("completion.p99Micros", String.format(Locale.ROOT, "%.1f", p99Micros));
+
+            double budget = budget("completion.maxMicros", 1000);
+            assertTrue(String.format("completion: p99 %.1f us is above %.0f us", p99Micros, budget), p99Micros <= budget);
+        }
+    }
+
+    @Test
+    public void deepTree() throws IOException {
+        runScenario("deepTree", (int run) -> {
+            int depth = size(1000, scale(run));
+            return Stream.of(
+                    lines("mkdir bench", "cd bench"),
+                    repeat(depth, (int i) -> i % 2 == 0 ? "mkdir d" : "cd d"),
+                    repeat(depth, (int i) -> "ls"),
+                    lines("cd /bench", "rm -r d")
+            ).flatMap((Stream<String> s) -> s);
+        });
+    }
+
+    @Test
+    public void wideTree() throws IOException {
+        runScenario("wideTree", (int run) -> {
+            int width = size(20000, scale(run));
+            return Stream.of(
+                    lines("mkdir bench", "cd bench", "mkdir wide", "cd wide"),
+                    repeat(width, (int i) -> "mkfile file" + i + ".txt"),
+                    lines("ls", "cd ..", "ls wide", "rm -r wide")
+            ).flatMap((Stream<String> s) -> s);
+        });
+    }
+
+    @Test
+    public void longScript() throws IOException {
+        runScenario("longScript", (int run) -> {
+            int length = size(1000000, scale(run));
+            String[] cycle = {"mkfile cheburek.txt", "echo cheburek.txt \"text\"", "head cheburek.txt",
+                    "cd .", "rm cheburek.txt", "unknown command"};
+            return Stream.concat(
+                    lines("mkdir bench", "cd bench"),
+                    repeat(length, (int i) -> cycle[i % cycle.length]));
+        });
+    }
+
+    @Test
+    public void echoAppend() throws IOException {
+        runScenario("echoAppend", (int run) -> {
+            int count = size(100000, scale(run));
+            return Stream.of(
+                    lines("mkdir bench", "cd bench", "mkfile log.txt"),
+                    repeat(count, (int i) -> "echo log.txt \"line " + i + " of the append-heavy stream\\n\""),
+                    lines("wc log.txt", "head log.txt -n 10", "head log.txt --from " + count + " -n 1")
+            ).flatMap((Stream<String> s) -> s);
+        });
+    }
+}
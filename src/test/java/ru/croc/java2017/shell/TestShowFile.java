@@ -0,0 +1,209 @@
+package ru.croc.java2017.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import ru.croc.java2017.shell.Shell.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public class TestShowFile extends TestCreatorFolder {
+    private static final String LINE_FORMAT = "line %d %d";
+
+    private PrintStream systemOut;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void captureOutput() {
+        systemOut = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @After
+    public void restoreOutput() {
+        System.setOut(systemOut);
+    }
+
+    private String[] outputLines() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    }
+
+    private void writeLines(OutputStream stream, int numberOfLines) throws IOException {
+        Random random = new Random(2017);
+        for (int i = 0; i < numberOfLines; i++) {
+            stream.write(String.format(LINE_FORMAT, i, random.nextLong()).getBytes(StandardCharsets.UTF_8));
+            stream.write('\n');
+        }
+    }
+
+    @Test
+    public void commonTest() throws IOException {
+        Path path = shell.makeFile("cheburek.txt");
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            writeLines(stream, 10);
+        }
+
+        shell.showFile("cheburek.txt", 3);
+        assertEquals(3, outputLines().length);
+        assertTrue(outputLines()[2].startsWith("line 2 "));
+    }
+
+    @Test
+    public void compressedTest() throws IOException {
+        Path path = shell.makeFile("cheburek.txt.gz");
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(path))) {
+            writeLines(stream, 100);
+        }
+
+        shell.showFile("cheburek.txt.gz", -1);
+        assertEquals(100, outputLines().length);
+        assertTrue(outputLines()[99].startsWith("line 99 "));
+    }
+
+    @Test
+    public void compressedStopsEarly() throws IOException {
+        Path path = shell.makeFile("cheburek.txt.gz");
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(path))) {
+            writeLines(stream, 200000);
+        }
+
+        // the tail of the archive is cut off, so reading it entirely would fail
+        byte[] compressed = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(compressed, compressed.length / 2));
+
+        shell.showFile("cheburek.txt.gz", 2);
+        assertEquals(2, outputLines().length);
+        assertTrue(outputLines()[1].startsWith("line 1 "));
+    }
+
+    @Test
+    public void buffersReused() throws IOException {
+        Path plain = shell.makeFile("cheburek.txt");
+        try (OutputStream stream = Files.newOutputStream(plain)) {
+            writeLines(stream, 10000);
+        }
+        Path compressed = shell.makeFile("cheburek.txt.gz");
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            writeLines(stream, 10000);
+        }
+        byte[] expected = Files.readAllBytes(plain);
+
+        // buffers of closed streams are reused, streams open at the same time don't share them
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            InputStream plainStream = shell.openFileStream(plain);
+            try (InputStream compressedStream = shell.openFileStream(compressed)) {
+                byte[] chunk = new byte[1000];
+                int read;
+                while ((read = plainStream.read(chunk)) > 0) {
+                    first.write(chunk, 0, read);
+                    read = compressedStream.read(chunk);
+                    second.write(chunk, 0, Math.max(read, 0));
+                }
+                while ((read = compressedStream.read(chunk)) > 0) {
+                    second.write(chunk, 0, read);
+                }
+            }
+            plainStream.close();
+            plainStream.close();
+
+            assertArrayEquals(expected, first.toByteArray());
+            assertArrayEquals(expected, second.toByteArray());
+        }
+    }
+
+    @Test
+    public void fromLineTest() throws IOException {
+        Path path = shell.makeFile("cheburek.txt");
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            writeLines(stream, 3 * ShellLineIndex.LINES_PER_ENTRY);
+        }
+
+        shell.showFile("cheburek.txt", 2 * ShellLineIndex.LINES_PER_ENTRY + 11, 2);
+        assertEquals(2, outputLines().length);
+        assertTrue(outputLines()[0].startsWith(String.format("line %d ", 2 * ShellLineIndex.LINES_PER_ENTRY + 10)));
+
+        // the file has only grown, so the index is extended
+        shell.writeTextToFile("cheburek.txt", "appended 1\nappended 2\n");
+        output.reset();
+        shell.showFile("cheburek.txt", 3 * ShellLineIndex.LINES_PER_ENTRY + 2, -1);
+        assertArrayEquals(new String[] {"appended 2"}, outputLines());
+    }
+
+    @Test
+    public void fromLineCarriageReturns() throws IOException {
+        // the first indexed line follows "\r\n"; "\r\n" at the end is split between appends
+        StringBuilder text = new StringBuilder();
+        String[] ends = {"\r\n", "\r", "\n"};
+        for (int i = 0; i < 2 * ShellLineIndex.LINES_PER_ENTRY; i++) {
+            text.append(i).append(ends[i % ends.length]);
+        }
+        Path path = shell.makeFile("cheburek.txt");
+        Files.write(path, (text + "tail\r").getBytes(StandardCharsets.UTF_8));
+
+        for (int line : new int[] {ShellLineIndex.LINES_PER_ENTRY - 2, ShellLineIndex.LINES_PER_ENTRY + 7,
+                2 * ShellLineIndex.LINES_PER_ENTRY - 1}) {
+            output.reset();
+            shell.showFile("cheburek.txt", line + 1, 1);
+            assertArrayEquals(new String[] {String.valueOf(line)}, outputLines());
+        }
+
+        shell.writeTextToFile("cheburek.txt", "\nappended\n");
+        output.reset();
+        shell.showFile("cheburek.txt", 2 * ShellLineIndex.LINES_PER_ENTRY + 2, -1);
+        assertArrayEquals(new String[] {"appended"}, outputLines());
+    }
+
+    @Test
+    public void fromLineRewritten() throws IOException {
+        Path path = shell.makeFile("cheburek.txt");
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            writeLines(stream, 2 * ShellLineIndex.LINES_PER_ENTRY);
+        }
+        shell.showFile("cheburek.txt", ShellLineIndex.LINES_PER_ENTRY + 1, 1);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * ShellLineIndex.LINES_PER_ENTRY; i++) {
+            text.append(i).append('\n');
+        }
+        Files.write(path, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        output.reset();
+        shell.showFile("cheburek.txt", 2 * ShellLineIndex.LINES_PER_ENTRY + 1, 1);
+        assertArrayEquals(new String[] {String.valueOf(2 * ShellLineIndex.LINES_PER_ENTRY)}, outputLines());
+    }
+
+    @Test
+    public void fromLineCompressed() throws IOException {
+        Path path = shell.makeFile("cheburek.txt.gz");
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(path))) {
+            writeLines(stream, 2 * ShellLineIndex.LINES_PER_ENTRY);
+        }
+
+        shell.showFile("cheburek.txt.gz", ShellLineIndex.LINES_PER_ENTRY + 6, 1);
+        assertTrue(outputLines()[0].startsWith(String.format("line %d ", ShellLineIndex.LINES_PER_ENTRY + 5)));
+    }
+
+    @Test(expected = ShellIOException.class)
+    public void throwsNotFile() throws ShellIOException {
+        shell.makeDirectory("dir");
+        shell.showFile("dir", 1);
+    }
+}
@@ -0,0 +1,201 @@
+package ru.croc.java2017.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+public class TestSort extends TestCreatorFolder {
+    private PrintStream systemOut;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void captureOutput() {
+        systemOut = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @After
+    public void restoreOutput() {
+        System.setOut(systemOut);
+    }
+
+    private String outputText() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void process(String script) throws IOException {
+        shell.processInputStream(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    private String sort(String text, ShellSort sort) throws IOException {
+        ByteArrayOutputStream sorted = new ByteArrayOutputStream();
+        sort.sort(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), () -> sorted);
+        return new String(sorted.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void keysTest() throws IOException {
+        String text = "pear,10,b\napple,9,a\n\nzebra,100,c\napple,9,a\nfig,-2.5,d";
+
+        assertEquals("\napple,9,a\napple,9,a\nfig,-2.5,d\npear,10,b\nzebra,100,c\n", sort(text, new ShellSort()));
+
+        ShellSort sort = new ShellSort();
+        sort.setField(2);
+        sort.setSeparator(',');
+        sort.setNumeric(true);
+        assertEquals("fig,-2.5,d\n\napple,9,a\napple,9,a\npear,10,b\nzebra,100,c\n", sort(text, sort));
+
+        sort.setUnique(true);
+        assertEquals("fig,-2.5,d\n\napple,9,a\npear,10,b\nzebra,100,c\n", sort(text, sort));
+
+        sort = new ShellSort();
+        sort.setField(2);
+        assertEquals("c\n  b   1\na 2\n", sort("a 2\nc\n  b   1\n", sort));
+    }
+
+    @Test
+    public void numericTest() throws IOException {
+        ShellSort sort = new ShellSort();
+        sort.setNumeric(true);
+        sort.setUnique(true);
+
+        // equal as doubles, but different numbers
+        assertEquals("9007199254740992\n9007199254740993\n", sort("9007199254740993\n9007199254740992\n", sort));
+        assertEquals("-10\n-9.5\n-0\n0.05\n0.5\n007\n12345678901234567890.1\n12345678901234567890.25\n",
+                sort("0.5\n-0\n0.50\n12345678901234567890.25\n007\n0\n-9.5\n12345678901234567890.1\n"
+                        + "-10\n0.05\nabc\n7.000\n", sort));
+    }
+
+    @Test
+    public void uniqueKeepsFirstTest() throws IOException {
+        ShellSort sort = new ShellSort();
+        sort.setField(2);
+        sort.setSeparator(',');
+        sort.setUnique(true);
+        assertEquals("c,0\nb,1\n", sort("b,1\na,1\nc,0\n", sort));
+
+        // lines with equal keys are spread over many runs
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            text.append(String.format("%05d,%d\n", 99999 - i, i % 3));
+        }
+        sort.setMemory(ShellSort.MIN_MEMORY);
+        assertEquals("99999,0\n99998,1\n99997,2\n", sort(text.toString(), sort));
+    }
+
+    @Test
+    public void spillTest() throws IOException {
+        // enough lines for more runs than are merged at once
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            String line = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            lines.add(line);
+            text.append(line).append('\n');
+        }
+        Collections.sort(lines);
+
+        ShellSort sort = new ShellSort();
+        sort.setMemory(ShellSort.MIN_MEMORY);
+
+        StringBuilder expected = new StringBuilder();
+        for (String line : lines) {
+            expected.append(line).append('\n');
+        }
+        assertEquals(expected.toString(), sort(text.toString(), sort));
+    }
+
+    @Test
+    public void budgetTest() throws IOException {
+        // 300K budget: 150K for the bytes of a run, not a power of two; 100 bytes long lines
+        StringBuilder text = new StringBuilder();
+        for (int i = 2000; i > 0; i--) {
+            text.append(String.format("%099d", i)).append('\n');
+        }
+
+        ShellSort sort = new ShellSort();
+        sort.setMemory(300 * 1024);
+        assertEquals(2000, sort(text.toString(), sort).split("\n").length);
+        assertEquals(150 * 1024, sort.getPeakBuffer());
+
+        // a line longer than the budget still fits
+        String line = String.join("", Collections.nCopies(200 * 1024, "x"));
+        sort = new ShellSort();
+        sort.setMemory(100 * 1024);
+        assertEquals("a\n" + line + "\n", sort(line + "\na\n", sort));
+    }
+
+    @Test
+    public void commandTest() throws IOException {
+        shell.makeFile("cheburek.txt");
+        shell.writeTextToFile("cheburek.txt", "b\na\nc\na\n");
+
+        process("sort -u cheburek.txt\n");
+        assertTrue(outputText().contains("a\nb\nc\n"));
+
+        output.reset();
+        process("sort -o cheburek.txt cheburek.txt -S 1M\nsort -k -1 cheburek.txt\nsort -t ab cheburek.txt\n");
+        assertEquals(Arrays.asList("a", "a", "b", "c"), Files.readAllLines(shell.getAbsolutePath("cheburek.txt")));
+        assertEquals(2, outputText().split("Illegal usage of command \"sort\"", -1).length - 1);
+    }
+
+    @Test
+    public void separatorTest() throws IOException {
+        shell.makeFile("file.csv");
+        shell.writeTextToFile("file.csv", "pear,b\napple,c\nfig,a\n");
+
+        process("sort -t ',' -k 2 file.csv\n");
+        assertTrue(outputText().contains("fig,a\npear,b\napple,c\n"));
+
+        output.reset();
+        process("sort -k 2 -t , file.csv\nsort -t \";\" -k 2 file.csv\nsort -t ',' file.csv ','\n");
+        String text = outputText();
+        assertTrue(text.contains("fig,a\npear,b\napple,c\n"));
+        // ";" isn't in lines: the second field is empty, lines are sorted as a whole
+        assertTrue(text.contains("apple,c\nfig,a\npear,b\n"));
+        assertTrue(text.contains("Illegal usage of command \"sort\""));
+    }
+
+    @Test
+    public void outputModeTest() throws IOException {
+        shell.makeFile("cheburek.txt");
+        shell.writeTextToFile("cheburek.txt", "b \"\u0447\"\na\n");
+
+        shell.setOutputMode(ShellOutput.Mode.JSON);
+        process("sort cheburek.txt\n");
+        assertEquals("{\"line\":\"a\"}\n{\"line\":\"b \\\"\u0447\\\"\"}\n", outputText());
+
+        output.reset();
+        shell.setOutputMode(ShellOutput.Mode.NUL);
+        process("sort -o sorted.txt cheburek.txt\nsort sorted.txt\n");
+        assertEquals("line=a\0\0line=b \"\u0447\"\0\0", outputText());
+    }
+
+    @Test
+    public void gzipTest() throws IOException {
+        Path path = shell.getAbsolutePath("cheburek.txt.gz");
+        try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(path))) {
+            gzip.write("3\n1\n2\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        shell.sortFile("cheburek.txt.gz", new ShellSort(), "sorted.txt");
+        assertEquals(Arrays.asList("1", "2", "3"), Files.readAllLines(shell.getAbsolutePath("sorted.txt")));
+    }
+}
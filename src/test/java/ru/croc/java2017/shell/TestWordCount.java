@@ -0,0 +1,85 @@
+package ru.croc.java2017.shell;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import ru.croc.java2017.shell.Shell.*;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TestWordCount extends TestCreatorFolder {
+    private static final String MESSAGE =
+            "Every breaking wave on the shore,\n" +
+            "Tells the next one there'll be one more.\n" +
+            "  Every gambler\tknows that to lose,\n" +
+            "\n" +
+            "It's what you're really there for.";
+
+    @Test
+    public void commonTest() throws ShellIOException {
+        shell.makeFile("cheburek.txt");
+        shell.writeTextToFile("cheburek.txt", MESSAGE);
+        shell.makeFile("empty.txt");
+
+        List<ShellWordCount> counts = shell.wordCount(Arrays.asList("cheburek.txt", "empty.txt"));
+        assertEquals(2, counts.size());
+
+        assertEquals(4, counts.get(0).getLines());
+        assertEquals(26, counts.get(0).getWords());
+        assertEquals(MESSAGE.length(), counts.get(0).getBytes());
+
+        assertEquals(0, counts.get(1).getLines());
+        assertEquals(0, counts.get(1).getWords());
+        assertEquals(0, counts.get(1).getBytes());
+    }
+
+    @Test
+    public void wordsAcrossRegions() throws IOException {
+        shell.makeFile("cheburek.txt");
+        Path path = shell.writeTextToFile("cheburek.txt", MESSAGE);
+
+        for (long regionSize = 1; regionSize <= MESSAGE.length(); regionSize++) {
+            ShellWordCount count = ShellWordCount.count(path, regionSize, new ShellIOGovernor());
+            assertEquals(4, count.getLines());
+            assertEquals(26, count.getWords());
+            assertEquals(MESSAGE.length(), count.getBytes());
+        }
+    }
+
+    @Test
+    public void mappedTest() throws IOException {
+        Path path = Files.createTempFile("cheburek", ".txt");
+        try {
+            Files.write(path, MESSAGE.getBytes(StandardCharsets.UTF_8));
+
+            ShellWordCount count = new Shell().wordCount(Arrays.asList(path.toString())).get(0);
+            assertEquals(4, count.getLines());
+            assertEquals(26, count.getWords());
+            assertEquals(MESSAGE.length(), count.getBytes());
+
+            count = ShellWordCount.count(path, 7, new ShellIOGovernor());
+            assertEquals(26, count.getWords());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = ShellIOException.class)
+    public void throwsNotExist() throws ShellIOException {
+        shell.wordCount(Arrays.asList("cheburek.txt"));
+    }
+
+    @Test(expected = ShellIOException.class)
+    public void throwsNotFile() throws ShellIOException {
+        shell.makeDirectory("dir");
+        shell.wordCount(Arrays.asList("dir"));
+    }
+}
@@ -0,0 +1,151 @@
+package ru.croc.java2017.shell.memory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TestMemoryFileSystem {
+    private FileSystem fileSystem;
+
+    @Before
+    public void setUp() throws IOException {
+        fileSystem = MemoryFileSystem.newFileSystem();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testPaths() {
+        Path path = fileSystem.getPath("/dir", "path/../file.txt");
+        assertEquals("/dir/path/../file.txt", path.toString());
+        assertEquals("/dir/file.txt", path.normalize().toString());
+        assertEquals("file.txt", path.getFileName().toString());
+        assertEquals(fileSystem.getPath("/dir/path/.."), path.getParent());
+        assertEquals(fileSystem.getPath("../b"), fileSystem.getPath("/a/c").relativize(fileSystem.getPath("/a/b")));
+        assertEquals(fileSystem.getPath("/"), fileSystem.getPath("").toAbsolutePath());
+        assertTrue(path.startsWith("/dir"));
+        assertTrue(path.endsWith("../file.txt"));
+        assertEquals(path, Paths.get(path.toUri()));
+    }
+
+    @Test
+    public void testFiles() throws IOException {
+        Path dir = Files.createDirectory(fileSystem.getPath("/dir"));
+        Path file = dir.resolve("file.txt");
+
+        Files.write(file, Arrays.asList("first", "second"));
+        Files.write(file, Collections.singletonList("third"), StandardOpenOption.APPEND);
+
+        assertTrue(Files.isDirectory(dir));
+        assertTrue(Files.isRegularFile(file));
+        assertEquals(Arrays.asList("first", "second", "third"), Files.readAllLines(file));
+        assertEquals("first\nsecond\nthird\n".length(), Files.size(file));
+
+        try (Stream<Path> stream = Files.list(dir)) {
+            assertEquals(Collections.singletonList(file), stream.collect(Collectors.toList()));
+        }
+
+        Files.move(file, fileSystem.getPath("/moved.txt"));
+        assertFalse(Files.exists(file));
+        assertEquals(Arrays.asList("first", "second", "third"), Files.readAllLines(fileSystem.getPath("/moved.txt")));
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        Path file = fileSystem.getPath("/file.bin");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("tail".getBytes(StandardCharsets.UTF_8)), 4);
+            channel.write(ByteBuffer.wrap("head".getBytes(StandardCharsets.UTF_8)), 0);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            channel.position(4);
+            assertEquals(4, channel.read(buffer));
+            assertEquals("tail", new String(buffer.array(), StandardCharsets.UTF_8));
+            assertEquals(-1, channel.read(buffer, 8));
+        }
+    }
+
+    @Test
+    public void testAccess() throws IOException {
+        Path dir = Files.createDirectory(fileSystem.getPath("/dir"));
+        Path file = Files.createFile(dir.resolve("file.txt"));
+
+        assertTrue(Files.isReadable(file));
+        assertTrue(Files.isWritable(file));
+        assertFalse(Files.isExecutable(file));
+        assertTrue(Files.isExecutable(dir));
+        assertFalse(Files.isReadable(dir.resolve("missing.txt")));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.lock();
+            fail();
+        } catch (UnsupportedOperationException err) {
+            assertEquals("Locking is not supported", err.getMessage());
+        }
+    }
+
+    @Test
+    public void testDirectContents() throws IOException {
+        FileSystem direct = MemoryFileSystem.newFileSystem(
+                Collections.singletonMap(MemoryFileSystem.ENV_DIRECT, true));
+        try {
+            Path file = direct.getPath("/file.txt");
+            byte[] contents = new byte[100000];
+            Arrays.fill(contents, (byte) 'a');
+
+            Files.write(file, contents);
+            assertArrayEquals(contents, Files.readAllBytes(file));
+        } finally {
+            direct.close();
+        }
+    }
+
+    @Test
+    public void testWalk() throws IOException {
+        Files.createDirectories(fileSystem.getPath("/a/b/c"));
+        Files.createFile(fileSystem.getPath("/a/b/file.txt"));
+
+        List<String> paths;
+        try (Stream<Path> stream = Files.walk(fileSystem.getPath("/a"))) {
+            paths = stream.map(Path::toString).collect(Collectors.toList());
+        }
+        assertEquals(Arrays.asList("/a", "/a/b", "/a/b/c", "/a/b/file.txt"), paths);
+    }
+
+    @Test(expected = DirectoryNotEmptyException.class)
+    public void throwsDirectoryNotEmpty() throws IOException {
+        Files.createDirectories(fileSystem.getPath("/a/b"));
+        Files.delete(fileSystem.getPath("/a"));
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void throwsNoSuchFile() throws IOException {
+        Files.createFile(fileSystem.getPath("/a/file.txt"));
+    }
+
+    @Test(expected = ClosedFileSystemException.class)
+    public void throwsClosed() throws IOException {
+        fileSystem.close();
+        Files.exists(fileSystem.getPath("/"));
+    }
+}